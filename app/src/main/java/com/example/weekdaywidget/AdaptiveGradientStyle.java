@@ -2,30 +2,33 @@ package com.example.weekdaywidget;
 
 public class AdaptiveGradientStyle {
     private final String name;
-    private final String startColor;
-    private final String endColor;
+    private final int startColor;
+    private final int endColor;
     private final int angle;
     private final boolean isDarkTheme;
+    private final int textColor;
 
-    public AdaptiveGradientStyle(String name, String startColor, String endColor, int angle, boolean isDarkTheme) {
+    public AdaptiveGradientStyle(String name, int startColor, int endColor, int angle, boolean isDarkTheme) {
         this.name = name;
         this.startColor = startColor;
         this.endColor = endColor;
         this.angle = angle;
         this.isDarkTheme = isDarkTheme;
+        // Light text for dark bg, dark text for light bg, unless either stop leaves it unreadable
+        this.textColor = ColorMath.pickTextColor(startColor, endColor, isDarkTheme ? 0xFFE0E0E0 : 0xFF2C3E50);
     }
 
     public String getName() { return name; }
-    public String getStartColor() { return startColor; }
-    public String getEndColor() { return endColor; }
+    public int getStartColor() { return startColor; }
+    public int getEndColor() { return endColor; }
     public int getAngle() { return angle; }
     public boolean isDarkTheme() { return isDarkTheme; }
 
     /**
-     * Gets appropriate text color based on background theme
+     * Gets a text color readable against both gradient stops
      */
     public int getTextColor() {
-        return isDarkTheme ? 0xFFE0E0E0 : 0xFF2C3E50; // Light text for dark bg, dark text for light bg
+        return textColor;
     }
 
     /**
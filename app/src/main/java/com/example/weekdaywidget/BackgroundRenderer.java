@@ -0,0 +1,220 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Rasterizes a gradient in a box shape at the widget's size, since RemoteViews cannot carry
+ * a GradientDrawable. Shapes come pre-rendered from {@link BoxSliceCache}; each distinct
+ * result is composed once and kept in memory and on disk.
+ */
+final class BackgroundRenderer {
+    private static final String TAG = "BackgroundRenderer";
+
+    // Every full push parcels the bitmap into a binder transaction capped at 1MB in total
+    static final int MAX_BITMAP_BYTES = 256 * 1024;
+    private static final int MEMORY_CACHE_BYTES = 2 * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "backgrounds";
+    private static final int MAX_DISK_ENTRIES = 32;
+
+    private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            // Pooled bitmaps may sit in a larger allocation than their current size
+            return bitmap.getAllocationByteCount();
+        }
+    };
+
+    private BackgroundRenderer() {}
+
+    /**
+     * Returns the background for the given start/end colors, angle and box style at the given
+     * size in dp, from cache when possible. Never returns a bitmap larger than
+     * {@link #MAX_BITMAP_BYTES}.
+     */
+    static Bitmap render(Context context, int[] colors, int angle, BoxDesignStyle boxStyle,
+                         int widthDp, int heightDp) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+
+        String key = String.format(Locale.US, "%08x_%08x_%d_%d_%dx%d_%d", colors[0], colors[1], angle,
+            boxStyle.getId(), widthDp, heightDp, metrics.densityDpi);
+        synchronized (memoryCache) {
+            Bitmap cached = memoryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File file = new File(getDiskCacheDir(context), key + ".png");
+        Bitmap bitmap = readFromDisk(file);
+        if (bitmap == null) {
+            bitmap = draw(colors, angle, boxStyle, widthDp, heightDp, metrics.density);
+            writeToDisk(file, bitmap);
+        }
+        synchronized (memoryCache) {
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Start and end colors of a fixed gradient style.
+     */
+    static int[] resolveColors(GradientStyle gradient) {
+        return new int[] {Color.parseColor(gradient.getStartColor()), Color.parseColor(gradient.getEndColor())};
+    }
+
+    static int resolveAngle(GradientStyle gradient) {
+        // Adaptive gradients always run top to bottom
+        return gradient.isAdaptive() ? 270 : gradient.getAngle();
+    }
+
+    private static Bitmap draw(int[] colors, int angle, BoxDesignStyle boxStyle, int widthDp, int heightDp,
+                               float density) {
+        // Scale down uniformly to stay within budget; the ImageView stretches it back
+        float scale = density;
+        long bytes = (long) Math.ceil(widthDp * scale) * (long) Math.ceil(heightDp * scale) * 4;
+        if (bytes > MAX_BITMAP_BYTES) {
+            scale *= (float) Math.sqrt((double) MAX_BITMAP_BYTES / bytes);
+        }
+        int width = Math.max(1, (int) (widthDp * scale));
+        int height = Math.max(1, (int) (heightDp * scale));
+        float edgeScale = scale / density;
+
+        BoxSliceCache.Slices slices = BoxSliceCache.get(boxStyle, density);
+        Bitmap bitmap = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        if (slices.shadow != null) {
+            slices.draw(canvas, slices.shadow, width, height, edgeScale, paint);
+        }
+
+        // Stretch the shape mask into a scratch layer, then keep the gradient only where it is opaque
+        Bitmap layer = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas layerCanvas = new Canvas(layer);
+        paint.setColor(Color.BLACK);
+        slices.draw(layerCanvas, slices.mask, width, height, edgeScale, paint);
+        Paint fill = new Paint(Paint.DITHER_FLAG);
+        fill.setShader(createShader(new RectF(0, 0, width, height), angle, colors));
+        fill.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+        layerCanvas.drawRect(0, 0, width, height, fill);
+        canvas.drawBitmap(layer, 0, 0, null);
+        BitmapPool.release(layer);
+        return bitmap;
+    }
+
+    /**
+     * Linear gradient across the bounds, using GradientDrawable's angle convention:
+     * 0 runs left to right and angles turn counter-clockwise.
+     */
+    private static Shader createShader(RectF bounds, int angle, int[] colors) {
+        double radians = Math.toRadians(angle);
+        float dx = (float) Math.cos(radians) * bounds.width() / 2;
+        float dy = (float) -Math.sin(radians) * bounds.height() / 2;
+        float cx = bounds.centerX();
+        float cy = bounds.centerY();
+        return new LinearGradient(cx - dx, cy - dy, cx + dx, cy + dy, colors[0], colors[1],
+            Shader.TileMode.CLAMP);
+    }
+
+    private static File getDiskCacheDir(Context context) {
+        return new File(context.getCacheDir(), DISK_CACHE_DIR);
+    }
+
+    private static Bitmap readFromDisk(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        // Stored at the exact pixel size it was drawn for
+        options.inScaled = false;
+        options.inMutable = true;
+        options.inBitmap = BitmapPool.acquireForDecode(options.outWidth, options.outHeight,
+            Bitmap.Config.ARGB_8888);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image
+            BitmapPool.release(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        }
+        if (bitmap != options.inBitmap) {
+            BitmapPool.release(options.inBitmap);
+        }
+        if (bitmap != null) {
+            // Keeps the eviction order roughly least recently used
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private static void writeToDisk(File file, Bitmap bitmap) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Error creating background cache dir");
+            return;
+        }
+        trimDiskCache(dir);
+
+        // Unique per writer, since two groups can render the same background at once
+        File temp;
+        try {
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+        } catch (IOException e) {
+            Log.e(TAG, "Error creating temp file for " + file.getName(), e);
+            return;
+        }
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, output)) {
+                throw new IOException("PNG compression failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing background " + file.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private static void trimDiskCache(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length < MAX_DISK_ENTRIES) {
+            return;
+        }
+        File oldest = files[0];
+        for (File candidate : files) {
+            if (candidate.lastModified() < oldest.lastModified()) {
+                oldest = candidate;
+            }
+        }
+        oldest.delete();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.weekdaywidget;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide pool of mutable bitmaps shared by the wallpaper extractor and the widget
+ * renderers. Free bitmaps are bucketed by allocation size (powers of two) and handed out
+ * again through {@link Bitmap#reconfigure}, so steady-state rendering allocates nothing.
+ * Only scratch bitmaps belong here: anything still referenced, such as a cached background,
+ * must never be released.
+ */
+final class BitmapPool {
+    private static final String TAG = "BitmapPool";
+    static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_MAX_BYTES = 1024 * 1024;
+    private static final int MAX_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final SparseArray<ArrayList<Bitmap>> buckets = new SparseArray<>();
+    private static int maxBytes = DEFAULT_MAX_BYTES;
+    private static boolean configured;
+    private static long bytesHeld;
+    private static int hits;
+    private static int misses;
+
+    private BitmapPool() {}
+
+    /**
+     * Sizes the cap from the device's per-app heap on first call: 1/64 of it, e.g. 4MB for a
+     * 256MB heap, within 1MB to 8MB. Later calls do nothing.
+     */
+    static synchronized void configure(Context context) {
+        if (configured) {
+            return;
+        }
+        configured = true;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return;
+        }
+        long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+        setMaxBytes((int) Math.max(MIN_MAX_BYTES, Math.min(MAX_MAX_BYTES, heapBytes / 64)));
+        Log.d(TAG, "Pool cap " + maxBytes + " bytes for a " + activityManager.getMemoryClass() + "MB heap");
+    }
+
+    /**
+     * Caps the bytes held by free bitmaps, dropping pooled bitmaps beyond the new cap.
+     */
+    private static synchronized void setMaxBytes(int bytes) {
+        maxBytes = bytes;
+        for (int i = buckets.size() - 1; i >= 0 && bytesHeld > maxBytes; i--) {
+            ArrayList<Bitmap> bucket = buckets.valueAt(i);
+            while (!bucket.isEmpty() && bytesHeld > maxBytes) {
+                Bitmap bitmap = bucket.remove(bucket.size() - 1);
+                bytesHeld -= bitmap.getAllocationByteCount();
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Returns a transparent mutable bitmap of exactly the given size and config, reusing a
+     * pooled one when one is large enough.
+     */
+    static Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(getByteCount(width, height, config));
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a pooled bitmap that can serve as {@code BitmapFactory.Options.inBitmap} for an
+     * image of the given size, or null on a miss. Hand it back with {@link #release} if the
+     * decoder does not use it.
+     */
+    static Bitmap acquireForDecode(int width, int height, Bitmap.Config config) {
+        return take(getByteCount(width, height, config));
+    }
+
+    /**
+     * Returns a bitmap to the pool. Bitmaps that are immutable or do not fit under the cap
+     * are recycled instead.
+     */
+    static synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bytesHeld + size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        int bucketIndex = getBucket(size);
+        ArrayList<Bitmap> bucket = buckets.get(bucketIndex);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.put(bucketIndex, bucket);
+        }
+        bucket.add(bitmap);
+        bytesHeld += size;
+    }
+
+    static synchronized String getStats() {
+        return "hits=" + hits + ", misses=" + misses + ", bytesHeld=" + bytesHeld + "/" + maxBytes;
+    }
+
+    private static synchronized Bitmap take(int bytes) {
+        // A bitmap from the next bucket up wastes at most half of itself
+        int bucketIndex = getBucket(bytes);
+        for (int index = bucketIndex; index <= bucketIndex + 1; index++) {
+            ArrayList<Bitmap> bucket = buckets.get(index);
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = bucket.get(i);
+                if (bitmap.getAllocationByteCount() >= bytes) {
+                    bucket.remove(i);
+                    bytesHeld -= bitmap.getAllocationByteCount();
+                    hits++;
+                    return bitmap;
+                }
+            }
+        }
+        misses++;
+        if (misses % 50 == 0) {
+            Log.d(TAG, "Pool stats: " + getStats());
+        }
+        return null;
+    }
+
+    private static int getBucket(int bytes) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+    }
+
+    private static int getByteCount(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel;
+        if (config == Bitmap.Config.ALPHA_8) {
+            bytesPerPixel = 1;
+        } else if (config == Bitmap.Config.RGB_565) {
+            bytesPerPixel = 2;
+        } else {
+            bytesPerPixel = 4;
+        }
+        return width * height * bytesPerPixel;
+    }
+}
@@ -24,6 +24,20 @@ public enum BoxDesignStyle {
         this.hasShadow = hasShadow;
     }
 
+    private static final BoxDesignStyle[] BY_ID;
+
+    static {
+        BoxDesignStyle[] all = values();
+        int maxId = 0;
+        for (BoxDesignStyle style : all) {
+            maxId = Math.max(maxId, style.id);
+        }
+        BY_ID = new BoxDesignStyle[maxId + 1];
+        for (BoxDesignStyle style : all) {
+            BY_ID[style.id] = style;
+        }
+    }
+
     public int getId() { return id; }
     public String getName() { return name; }
     public float getCornerRadius() { return cornerRadius; }
@@ -31,10 +45,8 @@ public enum BoxDesignStyle {
     public boolean hasShadow() { return hasShadow; }
 
     public static BoxDesignStyle fromId(int id) {
-        for (BoxDesignStyle style : values()) {
-            if (style.id == id) {
-                return style;
-            }
+        if (id >= 0 && id < BY_ID.length && BY_ID[id] != null) {
+            return BY_ID[id];
         }
         return ROUNDED_CORNERS; // Default
     }
@@ -0,0 +1,216 @@
+package com.example.weekdaywidget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.SparseArray;
+
+/**
+ * Box shapes rendered once per style and density as stretchable slices: an alpha mask of
+ * the shape (stroke included) plus, for shadowed styles, the blurred shadow. Backgrounds of
+ * any size are composed from these with plain bitmap draws, so blur and stroking run once.
+ * RemoteViews cannot carry a real NinePatch, so the slicing is done here instead.
+ */
+final class BoxSliceCache {
+    private static final float BORDER_WIDTH_DP = 2f;
+    private static final float MINIMAL_BORDER_WIDTH_DP = 1f;
+    private static final float SHADOW_RADIUS_DP = 4f;
+    private static final float SHADOW_OFFSET_DP = 2f;
+    private static final int SHADOW_COLOR = 0x40000000;
+    // Shapes that scale as a whole are drawn large enough to rarely be upscaled much
+    private static final float OVAL_SIZE_DP = 160f;
+    private static final float HEXAGON_HEIGHT_DP = 96f;
+
+    private static final SparseArray<Slices> cache = new SparseArray<>();
+    private static float cachedDensity;
+
+    private BoxSliceCache() {}
+
+    static synchronized Slices get(BoxDesignStyle boxStyle, float density) {
+        if (density != cachedDensity) {
+            cache.clear();
+            cachedDensity = density;
+        }
+        Slices slices = cache.get(boxStyle.getId());
+        if (slices == null) {
+            slices = create(boxStyle, density);
+            cache.put(boxStyle.getId(), slices);
+        }
+        return slices;
+    }
+
+    /**
+     * One pre-rendered box style. Corners (nine-slice) or end caps (hexagon) keep their
+     * shape while the middle stretches; ovals stretch as a whole.
+     */
+    static final class Slices {
+        static final int STRETCH_NINE = 0;
+        static final int STRETCH_CAPS = 1;
+        static final int STRETCH_WHOLE = 2;
+
+        final Bitmap mask;
+        final Bitmap shadow;
+        final int mode;
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+
+        private final Rect src = new Rect();
+        private final RectF dst = new RectF();
+
+        Slices(Bitmap mask, Bitmap shadow, int mode, int left, int top, int right, int bottom) {
+            this.mask = mask;
+            this.shadow = shadow;
+            this.mode = mode;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        /**
+         * Draws one of this style's bitmaps stretched to the given size. {@code edgeScale}
+         * shrinks the fixed edges when the target is drawn below full density.
+         */
+        synchronized void draw(Canvas canvas, Bitmap source, int width, int height, float edgeScale,
+                               Paint paint) {
+            if (mode == STRETCH_WHOLE) {
+                dst.set(0, 0, width, height);
+                canvas.drawBitmap(source, null, dst, paint);
+                return;
+            }
+
+            float dl;
+            float dr;
+            float dt;
+            float db;
+            if (mode == STRETCH_CAPS) {
+                // Caps scale with the height so the points keep their angle
+                float cap = Math.min(left * (float) height / source.getHeight(), width / 4f);
+                dl = dr = cap;
+                dt = db = 0;
+            } else {
+                // Corners shrink uniformly when they do not fit, like a NinePatch
+                float fit = Math.min(1f, Math.min(width / ((left + right) * edgeScale),
+                    height / ((top + bottom) * edgeScale)));
+                float scale = edgeScale * fit;
+                dl = left * scale;
+                dr = right * scale;
+                dt = top * scale;
+                db = bottom * scale;
+            }
+
+            int[] srcX = {0, left, source.getWidth() - right, source.getWidth()};
+            int[] srcY = {0, top, source.getHeight() - bottom, source.getHeight()};
+            float[] dstX = {0, dl, width - dr, width};
+            float[] dstY = {0, dt, height - db, height};
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    if (srcX[column] == srcX[column + 1] || srcY[row] == srcY[row + 1]) {
+                        continue;
+                    }
+                    src.set(srcX[column], srcY[row], srcX[column + 1], srcY[row + 1]);
+                    dst.set(dstX[column], dstY[row], dstX[column + 1], dstY[row + 1]);
+                    canvas.drawBitmap(source, src, dst, paint);
+                }
+            }
+        }
+    }
+
+    private static Slices create(BoxDesignStyle boxStyle, float density) {
+        if (boxStyle == BoxDesignStyle.CIRCULAR) {
+            return createOval(boxStyle, density);
+        }
+        if (boxStyle == BoxDesignStyle.HEXAGON) {
+            return createHexagon(density);
+        }
+
+        float stroke = boxStyle.isBorderOnly() ? getBorderWidth(boxStyle) * density : 0f;
+        float radius = boxStyle.getCornerRadius() * density;
+        float shadowRadius = boxStyle.hasShadow() ? SHADOW_RADIUS_DP * density : 0f;
+        float shadowOffset = boxStyle.hasShadow() ? SHADOW_OFFSET_DP * density : 0f;
+
+        // Fixed edges hold margin, corner and stroke; a single pixel in between stretches
+        int left = (int) Math.ceil(shadowRadius + radius + stroke) + 1;
+        int top = (int) Math.ceil(shadowRadius - shadowOffset + radius + stroke) + 1;
+        int bottom = (int) Math.ceil(shadowRadius + shadowOffset + radius + stroke) + 1;
+        int width = left * 2 + 1;
+        int height = top + bottom + 1;
+        RectF bounds = new RectF(shadowRadius, shadowRadius - shadowOffset,
+            width - shadowRadius, height - shadowRadius - shadowOffset);
+
+        Path shape = new Path();
+        shape.addRoundRect(bounds, radius, radius, Path.Direction.CW);
+        Bitmap shadow = boxStyle.hasShadow()
+            ? drawShadow(shape, width, height, shadowRadius, shadowOffset) : null;
+
+        Bitmap mask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        if (stroke > 0) {
+            bounds.inset(stroke / 2, stroke / 2);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(stroke);
+            new Canvas(mask).drawRoundRect(bounds, radius, radius, paint);
+        } else {
+            new Canvas(mask).drawPath(shape, paint);
+        }
+        return new Slices(mask, shadow, Slices.STRETCH_NINE, left, top, left, bottom);
+    }
+
+    private static Slices createOval(BoxDesignStyle boxStyle, float density) {
+        int size = Math.round(OVAL_SIZE_DP * density);
+        float shadowRadius = boxStyle.hasShadow() ? SHADOW_RADIUS_DP * density : 0f;
+        float shadowOffset = boxStyle.hasShadow() ? SHADOW_OFFSET_DP * density : 0f;
+        RectF bounds = new RectF(shadowRadius, shadowRadius - shadowOffset,
+            size - shadowRadius, size - shadowRadius - shadowOffset);
+
+        Bitmap mask = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+        new Canvas(mask).drawOval(bounds, new Paint(Paint.ANTI_ALIAS_FLAG));
+        Bitmap shadow = null;
+        if (boxStyle.hasShadow()) {
+            Path shape = new Path();
+            shape.addOval(bounds, Path.Direction.CW);
+            shadow = drawShadow(shape, size, size, shadowRadius, shadowOffset);
+        }
+        return new Slices(mask, shadow, Slices.STRETCH_WHOLE, 0, 0, 0, 0);
+    }
+
+    /**
+     * Horizontal hexagon whose pointed ends are half as wide as it is tall.
+     */
+    private static Slices createHexagon(float density) {
+        int height = Math.round(HEXAGON_HEIGHT_DP * density);
+        int cap = (height + 1) / 2;
+        int width = cap * 2 + 1;
+
+        Path path = new Path();
+        path.moveTo(0, height / 2f);
+        path.lineTo(cap, 0);
+        path.lineTo(width - cap, 0);
+        path.lineTo(width, height / 2f);
+        path.lineTo(width - cap, height);
+        path.lineTo(cap, height);
+        path.close();
+
+        Bitmap mask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        new Canvas(mask).drawPath(path, new Paint(Paint.ANTI_ALIAS_FLAG));
+        return new Slices(mask, null, Slices.STRETCH_CAPS, cap, 0, cap, 0);
+    }
+
+    private static Bitmap drawShadow(Path shape, int width, int height, float shadowRadius, float shadowOffset) {
+        Bitmap shadow = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(SHADOW_COLOR);
+        paint.setShadowLayer(shadowRadius, 0, shadowOffset, SHADOW_COLOR);
+        new Canvas(shadow).drawPath(shape, paint);
+        return shadow;
+    }
+
+    private static float getBorderWidth(BoxDesignStyle boxStyle) {
+        return boxStyle == BoxDesignStyle.MINIMAL_BORDER ? MINIMAL_BORDER_WIDTH_DP : BORDER_WIDTH_DP;
+    }
+}
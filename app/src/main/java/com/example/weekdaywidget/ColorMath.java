@@ -0,0 +1,94 @@
+package com.example.weekdaywidget;
+
+/**
+ * Color helpers on packed ARGB ints that allocate nothing. Luminance reads linear values from
+ * a 256-entry table instead of calling {@code Math.pow} per channel.
+ */
+final class ColorMath {
+    /** WCAG AA minimum for normal-size text. */
+    static final double MIN_TEXT_CONTRAST = 4.5;
+
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            double value = i / 255.0;
+            SRGB_TO_LINEAR[i] = value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private ColorMath() {}
+
+    /**
+     * Relative luminance as defined by WCAG, from 0 for black to 1 for white.
+     */
+    static double luminance(int color) {
+        return 0.2126 * SRGB_TO_LINEAR[(color >> 16) & 0xFF]
+            + 0.7152 * SRGB_TO_LINEAR[(color >> 8) & 0xFF]
+            + 0.0722 * SRGB_TO_LINEAR[color & 0xFF];
+    }
+
+    static boolean isDark(int color) {
+        return luminance(color) < 0.5;
+    }
+
+    /**
+     * WCAG contrast ratio between two colors, from 1 to 21.
+     */
+    static double contrast(int first, int second) {
+        double a = luminance(first);
+        double b = luminance(second);
+        return (Math.max(a, b) + 0.05) / (Math.min(a, b) + 0.05);
+    }
+
+    /**
+     * Multiplies the HSV value by {@code factor}, keeping hue and saturation.
+     */
+    static int darken(int color, float factor) {
+        return withValue(color, getValue(color) * factor);
+    }
+
+    /**
+     * Adds {@code amount} to the HSV value, up to 1, keeping hue and saturation.
+     */
+    static int lighten(int color, float amount) {
+        return withValue(color, Math.min(1f, getValue(color) + amount));
+    }
+
+    /**
+     * Returns {@code preferred} if it reaches {@link #MIN_TEXT_CONTRAST} against both gradient
+     * stops, otherwise whichever of white and black has the better worst-case contrast. With
+     * one light and one dark stop neither may reach 4.5:1, so the ratio is then only the best
+     * available, not guaranteed.
+     */
+    static int pickTextColor(int start, int end, int preferred) {
+        if (Math.min(contrast(preferred, start), contrast(preferred, end)) >= MIN_TEXT_CONTRAST) {
+            return preferred;
+        }
+        double white = Math.min(contrast(0xFFFFFFFF, start), contrast(0xFFFFFFFF, end));
+        double black = Math.min(contrast(0xFF000000, start), contrast(0xFF000000, end));
+        return white >= black ? 0xFFFFFFFF : 0xFF000000;
+    }
+
+    private static float getValue(int color) {
+        return Math.max((color >> 16) & 0xFF, Math.max((color >> 8) & 0xFF, color & 0xFF)) / 255f;
+    }
+
+    /**
+     * With hue and saturation fixed, every channel is proportional to the value, so changing
+     * the value is a uniform scale of the channels.
+     */
+    private static int withValue(int color, float value) {
+        int max = Math.max((color >> 16) & 0xFF, Math.max((color >> 8) & 0xFF, color & 0xFF));
+        int target = Math.round(Math.max(0f, value) * 255f);
+        if (max == 0) {
+            // Black has no hue or saturation, so it becomes gray
+            return (color & 0xFF000000) | target << 16 | target << 8 | target;
+        }
+        float scale = (float) target / max;
+        int r = Math.min(255, Math.round(((color >> 16) & 0xFF) * scale));
+        int g = Math.min(255, Math.round(((color >> 8) & 0xFF) * scale));
+        int b = Math.min(255, Math.round((color & 0xFF) * scale));
+        return (color & 0xFF000000) | r << 16 | g << 8 | b;
+    }
+}
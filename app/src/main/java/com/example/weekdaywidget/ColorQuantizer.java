@@ -0,0 +1,406 @@
+package com.example.weekdaywidget;
+
+import java.util.Arrays;
+
+/**
+ * Median-cut quantizer over a raw ARGB pixel buffer, picking the same dominant, vibrant and
+ * muted colors the widget used to take from Palette. It follows Palette's ColorCutQuantizer
+ * and default targets step for step, but keeps everything in int arrays, so one run
+ * allocates a handful of arrays and no per-color objects.
+ */
+final class ColorQuantizer {
+    private static final int MAX_COLORS = 16;
+    private static final int QUANTIZE_BITS = 5;
+    private static final int QUANTIZE_MASK = (1 << QUANTIZE_BITS) - 1;
+    private static final int COMPONENT_RED = 0;
+    private static final int COMPONENT_GREEN = 1;
+    private static final int COMPONENT_BLUE = 2;
+
+    // Palette's default filter
+    private static final float BLACK_MAX_LIGHTNESS = 0.05f;
+    private static final float WHITE_MIN_LIGHTNESS = 0.95f;
+    private static final float RED_I_LINE_MIN_HUE = 10f;
+    private static final float RED_I_LINE_MAX_HUE = 37f;
+    private static final float RED_I_LINE_MAX_SATURATION = 0.82f;
+
+    // Palette's default targets in the order it fills them: light vibrant, vibrant, dark
+    // vibrant, light muted, muted, dark muted. Each takes its swatch away from later ones.
+    private static final int TARGET_VIBRANT = 1;
+    private static final int TARGET_MUTED = 4;
+    private static final float[] MIN_SATURATION = {0.35f, 0.35f, 0.35f, 0f, 0f, 0f};
+    private static final float[] TARGET_SATURATION = {1f, 1f, 1f, 0.3f, 0.3f, 0.3f};
+    private static final float[] MAX_SATURATION = {1f, 1f, 1f, 0.4f, 0.4f, 0.4f};
+    private static final float[] MIN_LIGHTNESS = {0.55f, 0.3f, 0f, 0.55f, 0.3f, 0f};
+    private static final float[] TARGET_LIGHTNESS = {0.74f, 0.5f, 0.26f, 0.74f, 0.5f, 0.26f};
+    private static final float[] MAX_LIGHTNESS = {1f, 0.7f, 0.45f, 1f, 0.7f, 0.45f};
+    // Saturation, lightness and population weights, normalized the way Palette does
+    private static final float[] WEIGHTS = normalize(new float[] {0.24f, 0.52f, 0.24f});
+
+    private ColorQuantizer() {}
+
+    /**
+     * Quantizes the first {@code count} pixels and returns {dominant, vibrant, muted}. Vibrant
+     * and muted fall back to the dominant color when no color qualifies, and all three fall
+     * back to {@code defaultColor} when the filter leaves no color.
+     */
+    static int[] quantize(int[] pixels, int count, int defaultColor) {
+        float[] hsl = new float[3];
+        int[] histogram = new int[1 << (QUANTIZE_BITS * 3)];
+        for (int i = 0; i < count; i++) {
+            histogram[quantize(pixels[i])]++;
+        }
+        int distinct = 0;
+        for (int color = 0; color < histogram.length; color++) {
+            if (histogram[color] > 0 && isIgnored(approximate(color), hsl)) {
+                histogram[color] = 0;
+            }
+            if (histogram[color] > 0) {
+                distinct++;
+            }
+        }
+
+        int[] colors = new int[distinct];
+        int index = 0;
+        for (int color = 0; color < histogram.length; color++) {
+            if (histogram[color] > 0) {
+                colors[index++] = color;
+            }
+        }
+
+        int[] swatchColors = new int[MAX_COLORS];
+        int[] populations = new int[MAX_COLORS];
+        int swatchCount = 0;
+        if (distinct <= MAX_COLORS) {
+            for (int color : colors) {
+                swatchColors[swatchCount] = approximate(color);
+                populations[swatchCount++] = histogram[color];
+            }
+        } else {
+            swatchCount = medianCut(colors, histogram, swatchColors, populations, hsl);
+        }
+        if (swatchCount == 0) {
+            return new int[] {defaultColor, defaultColor, defaultColor};
+        }
+
+        int dominant = 0;
+        for (int i = 1; i < swatchCount; i++) {
+            if (populations[i] > populations[dominant]) {
+                dominant = i;
+            }
+        }
+
+        int[] picked = new int[TARGET_SATURATION.length];
+        for (int target = 0; target < picked.length; target++) {
+            picked[target] = pickTarget(swatchColors, populations, swatchCount, populations[dominant], target,
+                picked, hsl);
+        }
+        int dominantColor = swatchColors[dominant];
+        return new int[] {
+            dominantColor,
+            picked[TARGET_VIBRANT] >= 0 ? swatchColors[picked[TARGET_VIBRANT]] : dominantColor,
+            picked[TARGET_MUTED] >= 0 ? swatchColors[picked[TARGET_MUTED]] : dominantColor
+        };
+    }
+
+    /**
+     * Splits the colors into up to {@link #MAX_COLORS} boxes and writes each box's average
+     * color and population, skipping averages the filter rejects. Returns the swatch count.
+     */
+    private static int medianCut(int[] colors, int[] histogram, int[] swatchColors, int[] populations,
+                                 float[] hsl) {
+        // Boxes are [lower, upper] ranges of colors, kept in a max-heap by volume that breaks
+        // ties like Palette's PriorityQueue, so the same boxes split in the same order
+        int[] lower = new int[MAX_COLORS + 1];
+        int[] upper = new int[MAX_COLORS + 1];
+        int[] volumes = new int[MAX_COLORS + 1];
+        int[] heap = new int[MAX_COLORS + 1];
+        int boxCount = 1;
+        int heapSize = 0;
+        upper[0] = colors.length - 1;
+        volumes[0] = getVolume(colors, 0, upper[0]);
+        heapSize = offer(heap, heapSize, volumes, 0);
+
+        while (heapSize < MAX_COLORS) {
+            int box = heap[0];
+            heapSize = poll(heap, heapSize, volumes);
+            if (upper[box] <= lower[box]) {
+                // Palette stops here, and the box it polled is not returned to the queue
+                break;
+            }
+            int split = splitBox(colors, histogram, lower[box], upper[box]);
+            int newBox = boxCount++;
+            lower[newBox] = split + 1;
+            upper[newBox] = upper[box];
+            volumes[newBox] = getVolume(colors, lower[newBox], upper[newBox]);
+            upper[box] = split;
+            volumes[box] = getVolume(colors, lower[box], upper[box]);
+            heapSize = offer(heap, heapSize, volumes, newBox);
+            heapSize = offer(heap, heapSize, volumes, box);
+        }
+
+        // Palette reads the boxes in the queue's array order
+        int swatchCount = 0;
+        for (int i = 0; i < heapSize; i++) {
+            int box = heap[i];
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            int population = 0;
+            for (int j = lower[box]; j <= upper[box]; j++) {
+                int color = colors[j];
+                int weight = histogram[color];
+                red += weight * component(color, COMPONENT_RED);
+                green += weight * component(color, COMPONENT_GREEN);
+                blue += weight * component(color, COMPONENT_BLUE);
+                population += weight;
+            }
+            int average = approximate(pack(Math.round(red / (float) population),
+                Math.round(green / (float) population), Math.round(blue / (float) population)));
+            if (!isIgnored(average, hsl)) {
+                swatchColors[swatchCount] = average;
+                populations[swatchCount++] = population;
+            }
+        }
+        return swatchCount;
+    }
+
+    private static int getVolume(int[] colors, int lower, int upper) {
+        int volume = 1;
+        for (int component = COMPONENT_RED; component <= COMPONENT_BLUE; component++) {
+            int min = QUANTIZE_MASK;
+            int max = 0;
+            for (int i = lower; i <= upper; i++) {
+                int value = component(colors[i], component);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            volume *= max - min + 1;
+        }
+        return volume;
+    }
+
+    /**
+     * Adds a box to the heap the way PriorityQueue.offer does; returns the new size.
+     */
+    private static int offer(int[] heap, int size, int[] volumes, int box) {
+        int k = size;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (volumes[box] <= volumes[heap[parent]]) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = box;
+        return size + 1;
+    }
+
+    /**
+     * Removes the head of the heap the way PriorityQueue.poll does; returns the new size.
+     */
+    private static int poll(int[] heap, int size, int[] volumes) {
+        int n = size - 1;
+        int last = heap[n];
+        if (n > 0) {
+            int k = 0;
+            int half = n >>> 1;
+            while (k < half) {
+                int child = 2 * k + 1;
+                int right = child + 1;
+                if (right < n && volumes[heap[right]] > volumes[heap[child]]) {
+                    child = right;
+                }
+                if (volumes[last] >= volumes[heap[child]]) {
+                    break;
+                }
+                heap[k] = heap[child];
+                k = child;
+            }
+            heap[k] = last;
+        }
+        return n;
+    }
+
+    /**
+     * Sorts the box along its longest side and returns the last index of its lower half, the
+     * point where half the box's pixels lie on either side.
+     */
+    private static int splitBox(int[] colors, int[] histogram, int lower, int upper) {
+        int[] ranges = new int[3];
+        for (int component = COMPONENT_RED; component <= COMPONENT_BLUE; component++) {
+            int min = QUANTIZE_MASK;
+            int max = 0;
+            for (int i = lower; i <= upper; i++) {
+                int value = component(colors[i], component);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            ranges[component] = max - min;
+        }
+        int longest;
+        if (ranges[COMPONENT_RED] >= ranges[COMPONENT_GREEN] && ranges[COMPONENT_RED] >= ranges[COMPONENT_BLUE]) {
+            longest = COMPONENT_RED;
+        } else if (ranges[COMPONENT_GREEN] >= ranges[COMPONENT_BLUE]) {
+            longest = COMPONENT_GREEN;
+        } else {
+            longest = COMPONENT_BLUE;
+        }
+
+        // Move the chosen component to the top bits so a plain int sort orders by it
+        reorder(colors, lower, upper, longest);
+        Arrays.sort(colors, lower, upper + 1);
+        restore(colors, lower, upper, longest);
+
+        int population = 0;
+        for (int i = lower; i <= upper; i++) {
+            population += histogram[colors[i]];
+        }
+        int midpoint = population / 2;
+        int seen = 0;
+        for (int i = lower; i <= upper; i++) {
+            seen += histogram[colors[i]];
+            if (seen >= midpoint) {
+                return Math.min(upper - 1, i);
+            }
+        }
+        return lower;
+    }
+
+    private static void reorder(int[] colors, int lower, int upper, int component) {
+        if (component == COMPONENT_RED) {
+            return;
+        }
+        for (int i = lower; i <= upper; i++) {
+            int color = colors[i];
+            int r = component(color, COMPONENT_RED);
+            int g = component(color, COMPONENT_GREEN);
+            int b = component(color, COMPONENT_BLUE);
+            colors[i] = component == COMPONENT_GREEN ? pack(g, r, b) : pack(b, g, r);
+        }
+    }
+
+    private static void restore(int[] colors, int lower, int upper, int component) {
+        // Both reorderings swap two components, so applying them again undoes them
+        reorder(colors, lower, upper, component);
+    }
+
+    /**
+     * Index of the best swatch for one of Palette's targets that no earlier target took, or
+     * -1 if none qualifies.
+     */
+    private static int pickTarget(int[] swatchColors, int[] populations, int swatchCount, int maxPopulation,
+                                  int target, int[] picked, float[] hsl) {
+        int best = -1;
+        float bestScore = 0f;
+        for (int i = 0; i < swatchCount; i++) {
+            toHsl(swatchColors[i], hsl);
+            if (hsl[1] < MIN_SATURATION[target] || hsl[1] > MAX_SATURATION[target]
+                    || hsl[2] < MIN_LIGHTNESS[target] || hsl[2] > MAX_LIGHTNESS[target]
+                    || isUsed(swatchColors, picked, target, swatchColors[i])) {
+                continue;
+            }
+            float score = WEIGHTS[0] * (1f - Math.abs(hsl[1] - TARGET_SATURATION[target]))
+                + WEIGHTS[1] * (1f - Math.abs(hsl[2] - TARGET_LIGHTNESS[target]))
+                + WEIGHTS[2] * (populations[i] / (float) maxPopulation);
+            if (best < 0 || score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Whether a target before {@code target} already took this color.
+     */
+    private static boolean isUsed(int[] swatchColors, int[] picked, int target, int color) {
+        for (int i = 0; i < target; i++) {
+            if (picked[i] >= 0 && swatchColors[picked[i]] == color) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Palette's default filter: rejects near black, near white and the skin tones along the
+     * red I line.
+     */
+    private static boolean isIgnored(int rgb, float[] hsl) {
+        toHsl(rgb, hsl);
+        return hsl[2] <= BLACK_MAX_LIGHTNESS || hsl[2] >= WHITE_MIN_LIGHTNESS
+            || (hsl[0] >= RED_I_LINE_MIN_HUE && hsl[0] <= RED_I_LINE_MAX_HUE
+                && hsl[1] <= RED_I_LINE_MAX_SATURATION);
+    }
+
+    /**
+     * Hue in degrees, saturation and lightness, computed as ColorUtils.colorToHSL does.
+     */
+    private static void toHsl(int rgb, float[] hsl) {
+        float r = ((rgb >> 16) & 0xFF) / 255f;
+        float g = ((rgb >> 8) & 0xFF) / 255f;
+        float b = (rgb & 0xFF) / 255f;
+        float max = Math.max(r, Math.max(g, b));
+        float min = Math.min(r, Math.min(g, b));
+        float delta = max - min;
+        float lightness = (max + min) / 2f;
+        float hue;
+        float saturation;
+        if (max == min) {
+            hue = 0f;
+            saturation = 0f;
+        } else {
+            if (max == r) {
+                hue = ((g - b) / delta) % 6f;
+            } else if (max == g) {
+                hue = ((b - r) / delta) + 2f;
+            } else {
+                hue = ((r - g) / delta) + 4f;
+            }
+            saturation = delta / (1f - Math.abs(2f * lightness - 1f));
+        }
+        hue = (hue * 60f) % 360f;
+        if (hue < 0f) {
+            hue += 360f;
+        }
+        hsl[0] = Math.max(0f, Math.min(360f, hue));
+        hsl[1] = Math.max(0f, Math.min(1f, saturation));
+        hsl[2] = Math.max(0f, Math.min(1f, lightness));
+    }
+
+    private static float[] normalize(float[] weights) {
+        float sum = 0f;
+        for (float weight : weights) {
+            sum += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private static int quantize(int pixel) {
+        return pack((pixel >> (16 + 8 - QUANTIZE_BITS)) & QUANTIZE_MASK,
+            (pixel >> (8 + 8 - QUANTIZE_BITS)) & QUANTIZE_MASK,
+            (pixel >> (8 - QUANTIZE_BITS)) & QUANTIZE_MASK);
+    }
+
+    private static int pack(int r, int g, int b) {
+        return r << (QUANTIZE_BITS * 2) | g << QUANTIZE_BITS | b;
+    }
+
+    private static int component(int color, int component) {
+        return (color >> (QUANTIZE_BITS * (2 - component))) & QUANTIZE_MASK;
+    }
+
+    /**
+     * Opaque 8-bit color of a quantized one. Like Palette, this only shifts each component
+     * up, leaving the low bits zero.
+     */
+    private static int approximate(int color) {
+        int shift = 8 - QUANTIZE_BITS;
+        return 0xFF000000 | component(color, COMPONENT_RED) << (16 + shift)
+            | component(color, COMPONENT_GREEN) << (8 + shift) | component(color, COMPONENT_BLUE) << shift;
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.weekdaywidget;
+
+import android.os.Build;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A date pattern compiled into static and dynamic segments. Day-level fields (weekday, month,
+ * day, year) and the literals around them are formatted once per local day; only hour,
+ * minute, second and AM/PM are written on each call, into a reusable StringBuilder.
+ * Patterns using letters outside that set fall back to SimpleDateFormat.
+ */
+final class CompiledDatePattern {
+    // Segment kinds; runs of literals and day-level fields are formatted together once a day
+    private static final int LITERAL = 0;
+    private static final int DAY_FIELD = 1;
+    private static final int HOUR_1_12 = 2;   // h
+    private static final int HOUR_0_23 = 3;   // H
+    private static final int HOUR_1_24 = 4;   // k
+    private static final int HOUR_0_11 = 5;   // K
+    private static final int MINUTE = 6;      // m
+    private static final int SECOND = 7;      // s
+    private static final int AM_PM = 8;       // a
+
+    private static final String DAY_LETTERS = "EMLdy";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Locale locale;
+    private final TimeZone zone;
+    private final SimpleDateFormat fallback;
+
+    // Compiled form: parallel arrays of segment kind, field letter, width and literal text;
+    // runEnds[i] is the index just past the static run starting at segment i
+    private final int[] kinds;
+    private final char[] letters;
+    private final int[] widths;
+    private final String[] literals;
+    private final int[] runEnds;
+    // Standalone month names for L fields, which differ from M's in inflected languages
+    private final String[] standaloneMonths;
+    private final String[] standaloneShortMonths;
+
+    private final String[] amPm;
+    private final char zeroDigit;
+    private final StringBuilder buffer = new StringBuilder(32);
+    private final Date date = new Date();
+
+    // Per-day state: formatted day-level segments, valid for [dayStart, dayEnd)
+    private final String[] dayTexts;
+    private long dayStart = Long.MAX_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+
+    CompiledDatePattern(String pattern, Locale locale, TimeZone zone) {
+        this.locale = locale;
+        this.zone = zone;
+
+        List<Object[]> segments = compile(pattern);
+        if (segments == null) {
+            fallback = new SimpleDateFormat(pattern, locale);
+            fallback.setTimeZone(zone);
+            kinds = null;
+            letters = null;
+            widths = null;
+            literals = null;
+            runEnds = null;
+            dayTexts = null;
+            standaloneMonths = null;
+            standaloneShortMonths = null;
+        } else {
+            fallback = null;
+            int count = segments.size();
+            kinds = new int[count];
+            letters = new char[count];
+            widths = new int[count];
+            literals = new String[count];
+            runEnds = new int[count];
+            dayTexts = new String[count];
+            boolean wideL = false;
+            boolean shortL = false;
+            for (int i = 0; i < count; i++) {
+                Object[] segment = segments.get(i);
+                kinds[i] = (Integer) segment[0];
+                letters[i] = (Character) segment[1];
+                widths[i] = (Integer) segment[2];
+                literals[i] = (String) segment[3];
+                wideL |= letters[i] == 'L' && widths[i] >= 4;
+                shortL |= letters[i] == 'L' && widths[i] == 3;
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                boolean isStatic = kinds[i] <= DAY_FIELD;
+                runEnds[i] = !isStatic ? i + 1
+                    : (i + 1 < count && kinds[i + 1] <= DAY_FIELD) ? runEnds[i + 1] : i + 1;
+            }
+            standaloneMonths = wideL ? getStandaloneMonths(locale, true) : null;
+            standaloneShortMonths = shortL ? getStandaloneMonths(locale, false) : null;
+        }
+
+        amPm = DateFormatSymbols.getInstance(locale).getAmPmStrings();
+        zeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+    }
+
+    /**
+     * Formats the given instant. Not thread-safe; the returned string is a fresh copy.
+     */
+    String format(long timeMillis) {
+        buffer.setLength(0);
+        formatTo(timeMillis, buffer);
+        return buffer.toString();
+    }
+
+    void formatTo(long timeMillis, StringBuilder out) {
+        if (fallback != null) {
+            date.setTime(timeMillis);
+            out.append(fallback.format(date));
+            return;
+        }
+
+        if (timeMillis < dayStart || timeMillis >= dayEnd) {
+            computeDay(timeMillis);
+        }
+
+        long localMillis = timeMillis + zone.getOffset(timeMillis);
+        int millisOfDay = (int) Math.floorMod(localMillis, DAY_MILLIS);
+        int hour = millisOfDay / 3_600_000;
+        int minute = (millisOfDay / 60_000) % 60;
+        int second = (millisOfDay / 1000) % 60;
+
+        int i = 0;
+        while (i < kinds.length) {
+            switch (kinds[i]) {
+                case LITERAL:
+                case DAY_FIELD:
+                    // Whole static run, precomputed for the current day
+                    out.append(dayTexts[i]);
+                    i = runEnds[i];
+                    continue;
+                case HOUR_1_12:
+                    appendNumber(out, hour % 12 == 0 ? 12 : hour % 12, widths[i]);
+                    break;
+                case HOUR_0_23:
+                    appendNumber(out, hour, widths[i]);
+                    break;
+                case HOUR_1_24:
+                    appendNumber(out, hour == 0 ? 24 : hour, widths[i]);
+                    break;
+                case HOUR_0_11:
+                    appendNumber(out, hour % 12, widths[i]);
+                    break;
+                case MINUTE:
+                    appendNumber(out, minute, widths[i]);
+                    break;
+                case SECOND:
+                    appendNumber(out, second, widths[i]);
+                    break;
+                case AM_PM:
+                    out.append(amPm[hour < 12 ? 0 : 1]);
+                    break;
+                default:
+                    break;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Whether a pattern contains fields that change more often than once a day.
+     */
+    static boolean hasTimeFields(String pattern) {
+        boolean inQuote = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (!inQuote && "aHkKhmsSzZX".indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void computeDay(long timeMillis) {
+        Calendar calendar = Calendar.getInstance(zone, locale);
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTimeInMillis();
+
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
+        int weekday = calendar.get(Calendar.DAY_OF_WEEK);
+        int month = calendar.get(Calendar.MONTH);
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+        int year = calendar.get(Calendar.YEAR);
+
+        StringBuilder run = new StringBuilder(32);
+        int runStart = -1;
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] > DAY_FIELD) {
+                continue;
+            }
+            if (runStart < 0 || i >= runEnds[runStart]) {
+                runStart = i;
+                run.setLength(0);
+            }
+            appendDayField(run, i, symbols, weekday, month, day, year);
+            if (i + 1 == runEnds[runStart]) {
+                dayTexts[runStart] = run.toString();
+            }
+        }
+
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        dayEnd = calendar.getTimeInMillis();
+    }
+
+    private void appendDayField(StringBuilder field, int i, DateFormatSymbols symbols,
+                                int weekday, int month, int day, int year) {
+        if (kinds[i] == LITERAL) {
+            field.append(literals[i]);
+            return;
+        }
+        int width = widths[i];
+        switch (letters[i]) {
+            case 'E':
+                field.append(width >= 4 ? symbols.getWeekdays()[weekday] : symbols.getShortWeekdays()[weekday]);
+                break;
+            case 'M':
+                if (width >= 4) {
+                    field.append(symbols.getMonths()[month]);
+                } else if (width == 3) {
+                    field.append(symbols.getShortMonths()[month]);
+                } else {
+                    appendNumber(field, month + 1, width);
+                }
+                break;
+            case 'L':
+                if (width >= 4) {
+                    field.append(standaloneMonths[month]);
+                } else if (width == 3) {
+                    field.append(standaloneShortMonths[month]);
+                } else {
+                    appendNumber(field, month + 1, width);
+                }
+                break;
+            case 'd':
+                appendNumber(field, day, width);
+                break;
+            case 'y':
+                if (width == 2) {
+                    appendNumber(field, year % 100, 2);
+                } else {
+                    appendNumber(field, year, width);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String[] getStandaloneMonths(Locale locale, boolean wide) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return android.icu.text.DateFormatSymbols.getInstance(locale).getMonths(
+                android.icu.text.DateFormatSymbols.STANDALONE,
+                wide ? android.icu.text.DateFormatSymbols.WIDE : android.icu.text.DateFormatSymbols.ABBREVIATED);
+        }
+        // java.text.DateFormatSymbols only has format names; the formatter itself has the others
+        SimpleDateFormat format = new SimpleDateFormat(wide ? "LLLL" : "LLL", locale);
+        Calendar calendar = Calendar.getInstance(locale);
+        calendar.clear();
+        calendar.set(2000, Calendar.JANUARY, 1);
+        String[] months = new String[12];
+        for (int i = 0; i < months.length; i++) {
+            calendar.set(Calendar.MONTH, i);
+            months[i] = format.format(calendar.getTime());
+        }
+        return months;
+    }
+
+    private void appendNumber(StringBuilder out, int value, int minWidth) {
+        int digits = value < 10 ? 1 : value < 100 ? 2 : value < 1000 ? 3 : value < 10000 ? 4 : 10;
+        for (int i = digits; i < minWidth; i++) {
+            out.append(zeroDigit);
+        }
+        if (digits == 10) {
+            // Out of the range the widget ever shows; keep it correct rather than fast
+            String text = Integer.toString(value);
+            for (int i = 0; i < text.length(); i++) {
+                out.append((char) (zeroDigit + (text.charAt(i) - '0')));
+            }
+            return;
+        }
+        int divisor = digits == 1 ? 1 : digits == 2 ? 10 : digits == 3 ? 100 : 1000;
+        while (divisor > 0) {
+            out.append((char) (zeroDigit + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Splits a pattern into segments, or returns null if it uses letters this class does not
+     * format itself. Each segment is {kind, letter, width, literal}.
+     */
+    private static List<Object[]> compile(String pattern) {
+        List<Object[]> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                // Quoted literal; '' is an escaped quote
+                int end = i + 1;
+                if (end < pattern.length() && pattern.charAt(end) == '\'') {
+                    literal.append('\'');
+                    i = end + 1;
+                    continue;
+                }
+                while (end < pattern.length()) {
+                    char q = pattern.charAt(end);
+                    if (q == '\'') {
+                        if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+                            literal.append('\'');
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(q);
+                    end++;
+                }
+                if (end >= pattern.length()) {
+                    return null; // Unterminated quote, let SimpleDateFormat report it
+                }
+                i = end + 1;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int width = 1;
+                while (i + width < pattern.length() && pattern.charAt(i + width) == c) {
+                    width++;
+                }
+                int kind = kindOf(c);
+                if (kind < 0) {
+                    return null;
+                }
+                flushLiteral(segments, literal);
+                segments.add(new Object[] {kind, c, width, null});
+                i += width;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        flushLiteral(segments, literal);
+        return segments;
+    }
+
+    private static void flushLiteral(List<Object[]> segments, StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Object[] {LITERAL, ' ', 0, literal.toString()});
+            literal.setLength(0);
+        }
+    }
+
+    private static int kindOf(char letter) {
+        if (DAY_LETTERS.indexOf(letter) >= 0) {
+            return DAY_FIELD;
+        }
+        switch (letter) {
+            case 'h': return HOUR_1_12;
+            case 'H': return HOUR_0_23;
+            case 'k': return HOUR_1_24;
+            case 'K': return HOUR_0_11;
+            case 'm': return MINUTE;
+            case 's': return SECOND;
+            case 'a': return AM_PM;
+            default: return -1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.weekdaywidget;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Shared, locale-aware formatters keyed by pattern, used by both the widget provider and
+ * the config screen. Each pattern is compiled once for the current (Locale, TimeZone) pair
+ * and reused until either changes.
+ */
+final class DateFormatterCache {
+    private static final Map<String, CompiledDatePattern> formatters = new HashMap<>();
+    private static Locale cachedLocale;
+    private static TimeZone cachedZone;
+
+    private DateFormatterCache() {}
+
+    /**
+     * Formats the given instant. Compiled patterns keep per-day state and are not
+     * thread-safe, so calls are serialized; each call allocates only the result string.
+     */
+    static synchronized String format(String pattern, long timeMillis) {
+        // Locale.getDefault() returns the same instance until the locale changes
+        Locale locale = Locale.getDefault();
+        if (locale != cachedLocale || cachedZone == null) {
+            formatters.clear();
+            cachedLocale = locale;
+            cachedZone = TimeZone.getDefault();
+        }
+
+        CompiledDatePattern formatter = formatters.get(pattern);
+        if (formatter == null) {
+            formatter = new CompiledDatePattern(pattern, cachedLocale, cachedZone);
+            formatters.put(pattern, formatter);
+        }
+        return formatter.format(timeMillis);
+    }
+
+    /**
+     * Drops every formatter; called when the timezone or locale changes.
+     */
+    static synchronized void invalidate() {
+        cachedLocale = null;
+        cachedZone = null;
+    }
+}
@@ -11,7 +11,12 @@ public enum DateTimeFormat {
     TIME_24H(7, "HH:mm"),
     DAY_TIME_12H(8, "EEEE h:mm a"),
     DAY_TIME_24H(9, "EEEE HH:mm"),
-    FULL_DATETIME(10, "EEE, MMM d, h:mm a");
+    FULL_DATETIME(10, "EEE, MMM d, h:mm a"),
+    // User-defined pattern, stored per widget in WidgetConfig
+    CUSTOM(11, "");
+
+    // Pattern letters understood by android.text.format.DateFormat, which TextClock uses
+    private static final String HOST_CLOCK_LETTERS = "adEhHkKLmMsyz";
 
     private final int id;
     private final String pattern;
@@ -21,6 +26,21 @@ public enum DateTimeFormat {
         this.pattern = pattern;
     }
 
+    // Indexed by id so fromId() is a bounds check and an array read
+    private static final DateTimeFormat[] BY_ID;
+
+    static {
+        DateTimeFormat[] all = values();
+        int maxId = 0;
+        for (DateTimeFormat format : all) {
+            maxId = Math.max(maxId, format.id);
+        }
+        BY_ID = new DateTimeFormat[maxId + 1];
+        for (DateTimeFormat format : all) {
+            BY_ID[format.id] = format;
+        }
+    }
+
     public int getId() {
         return id;
     }
@@ -30,10 +50,8 @@ public enum DateTimeFormat {
     }
 
     public static DateTimeFormat fromId(int id) {
-        for (DateTimeFormat format : values()) {
-            if (format.id == id) {
-                return format;
-            }
+        if (id >= 0 && id < BY_ID.length && BY_ID[id] != null) {
+            return BY_ID[id];
         }
         return DAY_ONLY; // Default fallback
     }
@@ -43,4 +61,29 @@ public enum DateTimeFormat {
                this == DAY_TIME_12H || this == DAY_TIME_24H || 
                this == FULL_DATETIME;
     }
+
+    /**
+     * Whether the launcher can tick this format itself through a TextClock,
+     * so the widget needs no alarms at all.
+     */
+    public boolean isHostClockCompatible() {
+        return needsFrequentUpdates() && isHostClockCompatible(pattern);
+    }
+
+    /**
+     * Whether every pattern letter is one that android.text.format.DateFormat understands.
+     */
+    static boolean isHostClockCompatible(String pattern) {
+        boolean inQuote = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (!inQuote && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+                    && HOST_CLOCK_LETTERS.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
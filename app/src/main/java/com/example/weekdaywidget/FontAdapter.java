@@ -12,7 +12,6 @@ import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.File;
 import java.util.List;
 
 public class FontAdapter extends RecyclerView.Adapter<FontAdapter.FontViewHolder> {
@@ -28,6 +27,8 @@ public class FontAdapter extends RecyclerView.Adapter<FontAdapter.FontViewHolder
     public FontAdapter(Context context, List<FontStyle> fonts) {
         this.context = context;
         this.fonts = fonts;
+        // Downloaded fonts show once the registry knows about them
+        TypefaceRegistry.scan(context, this::notifyDataSetChanged);
     }
 
     public void setOnFontSelectedListener(OnFontSelectedListener listener) {
@@ -75,7 +76,7 @@ public class FontAdapter extends RecyclerView.Adapter<FontAdapter.FontViewHolder
                 if (position != RecyclerView.NO_POSITION) {
                     FontStyle font = fonts.get(position);
                     
-                    if (font.isPreInstalled() || FontDownloader.isFontDownloaded(context, font)) {
+                    if (TypefaceRegistry.isAvailable(font)) {
                         setSelectedPosition(position);
                         if (listener != null) {
                             listener.onFontSelected(font);
@@ -91,33 +92,15 @@ public class FontAdapter extends RecyclerView.Adapter<FontAdapter.FontViewHolder
         public void bind(FontStyle font, boolean isSelected) {
             fontName.setText(font.getName());
             
-            // Set font if available
-            if (font.isPreInstalled()) {
-                    try {
-                        int fontResource = context.getResources().getIdentifier(
-                            font.getFileName(), "font", context.getPackageName());
-                        if (fontResource != 0) {
-                            Typeface typeface = androidx.core.content.res.ResourcesCompat.getFont(context, fontResource);
-                            fontPreview.setTypeface(typeface);
-                        }
-                    } catch (Exception e) {
-                        // Fallback to default font
-                    }
-                downloadIndicator.setVisibility(View.GONE);
-            } else if (FontDownloader.isFontDownloaded(context, font)) {
-                // Load downloaded font
-                try {
-                    File fontFile = new File(context.getFilesDir(), "fonts/" + font.getFileName() + ".ttf");
-                    Typeface typeface = Typeface.createFromFile(fontFile);
-                    fontPreview.setTypeface(typeface);
-                } catch (Exception e) {
-                    // Fallback to default font
-                }
-                downloadIndicator.setVisibility(View.VISIBLE);
-            } else {
-                fontPreview.setTypeface(Typeface.DEFAULT);
-                downloadIndicator.setVisibility(View.GONE);
+            // Set font if available; a font not yet in memory is loaded and bound again
+            Typeface typeface = TypefaceRegistry.peek(font);
+            if (typeface == null && TypefaceRegistry.isAvailable(font)) {
+                int position = getAdapterPosition();
+                TypefaceRegistry.load(context, font, () -> notifyItemChanged(position));
             }
+            fontPreview.setTypeface(typeface != null ? typeface : Typeface.DEFAULT);
+            downloadIndicator.setVisibility(!font.isPreInstalled() && TypefaceRegistry.isAvailable(font)
+                ? View.VISIBLE : View.GONE);
             
             // Highlight selected item
             if (isSelected) {
@@ -53,15 +53,6 @@ public class FontDownloader {
         new DownloadFontTask(context, fontStyle, listener).execute(fontUrl);
     }
 
-    public static boolean isFontDownloaded(Context context, FontStyle fontStyle) {
-        if (fontStyle.isPreInstalled()) {
-            return true;
-        }
-        
-        File fontFile = new File(context.getFilesDir(), "fonts/" + fontStyle.getFileName() + ".ttf");
-        return fontFile.exists();
-    }
-
     private static class DownloadFontTask extends AsyncTask<String, Integer, Boolean> {
         private final Context context;
         private final FontStyle fontStyle;
@@ -138,6 +129,9 @@ public class FontDownloader {
 
         @Override
         protected void onPostExecute(Boolean success) {
+            if (success) {
+                TypefaceRegistry.onFontDownloaded(fontStyle);
+            }
             listener.onFontDownloaded(fontStyle.getName(), success);
         }
     }
@@ -26,6 +26,20 @@ public enum FontStyle {
         this.isPreInstalled = isPreInstalled;
     }
 
+    private static final FontStyle[] BY_ID;
+
+    static {
+        FontStyle[] all = values();
+        int maxId = 0;
+        for (FontStyle style : all) {
+            maxId = Math.max(maxId, style.id);
+        }
+        BY_ID = new FontStyle[maxId + 1];
+        for (FontStyle style : all) {
+            BY_ID[style.id] = style;
+        }
+    }
+
     public int getId() { return id; }
     public String getName() { return name; }
     public String getFileName() { return fileName; }
@@ -36,10 +50,8 @@ public enum FontStyle {
     }
 
     public static FontStyle fromId(int id) {
-        for (FontStyle style : values()) {
-            if (style.id == id) {
-                return style;
-            }
+        if (id >= 0 && id < BY_ID.length && BY_ID[id] != null) {
+            return BY_ID[id];
         }
         return DANCING_SCRIPT; // Default
     }
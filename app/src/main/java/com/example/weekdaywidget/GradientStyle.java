@@ -30,6 +30,20 @@ public enum GradientStyle {
         this.angle = angle;
     }
 
+    private static final GradientStyle[] BY_ID;
+
+    static {
+        GradientStyle[] all = values();
+        int maxId = 0;
+        for (GradientStyle style : all) {
+            maxId = Math.max(maxId, style.id);
+        }
+        BY_ID = new GradientStyle[maxId + 1];
+        for (GradientStyle style : all) {
+            BY_ID[style.id] = style;
+        }
+    }
+
     public int getId() { return id; }
     public String getName() { return name; }
     public String getStartColor() { return startColor; }
@@ -37,10 +51,8 @@ public enum GradientStyle {
     public int getAngle() { return angle; }
 
     public static GradientStyle fromId(int id) {
-        for (GradientStyle style : values()) {
-            if (style.id == id) {
-                return style;
-            }
+        if (id >= 0 && id < BY_ID.length && BY_ID[id] != null) {
+            return BY_ID[id];
         }
         return PASTEL_PINK; // Default
     }
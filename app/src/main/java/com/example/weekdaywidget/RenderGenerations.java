@@ -0,0 +1,40 @@
+package com.example.weekdaywidget;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-widget render generation. Every render request takes the next generation; a render
+ * whose generation is no longer the latest has been superseded and should be dropped.
+ */
+final class RenderGenerations {
+    private static final ConcurrentHashMap<Integer, AtomicInteger> generations = new ConcurrentHashMap<>();
+
+    private RenderGenerations() {}
+
+    /**
+     * Starts a new render request for the widget and returns its generation.
+     */
+    static int next(int appWidgetId) {
+        AtomicInteger generation = generations.get(appWidgetId);
+        if (generation == null) {
+            AtomicInteger created = new AtomicInteger();
+            generation = generations.putIfAbsent(appWidgetId, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        return generation.incrementAndGet();
+    }
+
+    static boolean isCurrent(int appWidgetId, int generation) {
+        AtomicInteger current = generations.get(appWidgetId);
+        return current != null && current.get() == generation;
+    }
+
+    static void remove(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            generations.remove(appWidgetId);
+        }
+    }
+}
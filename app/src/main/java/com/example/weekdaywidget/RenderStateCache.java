@@ -0,0 +1,109 @@
+package com.example.weekdaywidget;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Remembers what was last pushed to each widget so identical renders never cross binder.
+ * Also counts full, partial and skipped pushes for the log.
+ */
+final class RenderStateCache {
+    private static final String TAG = "RenderStateCache";
+
+    /** Nothing differs from what the host already shows. */
+    static final int UNCHANGED = 0;
+    /** Only the text differs; a partial update is enough. */
+    static final int TEXT_CHANGED = 1;
+    /** Layout, style or size differs, or nothing was pushed yet in this process. */
+    static final int FULL = 2;
+
+    private static final SparseArray<Fingerprint> rendered = new SparseArray<>();
+    private static int fullCount;
+    private static int partialCount;
+    private static int skippedCount;
+
+    private RenderStateCache() {}
+
+    /**
+     * Everything a render depends on. The click intent only depends on the appWidgetId, so
+     * it is implied by the key. {@code wallpaperKey} and {@code regionBucket} are only set
+     * for adaptive gradients.
+     */
+    static final class Fingerprint {
+        final WidgetConfig config;
+        final boolean darkMode;
+        final int sizeBucket;
+        final int wallpaperKey;
+        final int regionBucket;
+        final String text;
+
+        Fingerprint(WidgetConfig config, boolean darkMode, int sizeBucket, int wallpaperKey, int regionBucket,
+                    String text) {
+            this.config = config;
+            this.darkMode = darkMode;
+            this.sizeBucket = sizeBucket;
+            this.wallpaperKey = wallpaperKey;
+            this.regionBucket = regionBucket;
+            this.text = text;
+        }
+
+        boolean sameStyle(Fingerprint other) {
+            return config.equals(other.config) && darkMode == other.darkMode && sizeBucket == other.sizeBucket
+                && wallpaperKey == other.wallpaperKey && regionBucket == other.regionBucket;
+        }
+    }
+
+    /**
+     * Compares a render against the last one pushed for this widget and records it as pushed
+     * unless it is unchanged. Returns {@link #UNCHANGED}, {@link #TEXT_CHANGED} or {@link #FULL}.
+     */
+    static synchronized int update(int appWidgetId, Fingerprint fingerprint) {
+        Fingerprint last = rendered.get(appWidgetId);
+        int result;
+        if (last == null || !last.sameStyle(fingerprint)) {
+            result = FULL;
+            fullCount++;
+        } else if (!last.text.equals(fingerprint.text)) {
+            result = TEXT_CHANGED;
+            partialCount++;
+        } else {
+            skippedCount++;
+            Log.d(TAG, "Skipped widget " + appWidgetId + " (full=" + fullCount
+                + ", partial=" + partialCount + ", skipped=" + skippedCount + ")");
+            return UNCHANGED;
+        }
+        rendered.put(appWidgetId, fingerprint);
+        return result;
+    }
+
+    /**
+     * Forgets a widget's last render so its next update is pushed in full.
+     */
+    static synchronized void forget(int appWidgetId) {
+        rendered.delete(appWidgetId);
+    }
+
+    /**
+     * Forgets a widget's last render only if it is still the given one, i.e. a render that
+     * was recorded but then abandoned before reaching the host.
+     */
+    static synchronized void forget(int appWidgetId, Fingerprint fingerprint) {
+        if (rendered.get(appWidgetId) == fingerprint) {
+            rendered.delete(appWidgetId);
+        }
+    }
+
+    static synchronized void remove(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            rendered.delete(appWidgetId);
+        }
+    }
+
+    static synchronized void clear() {
+        rendered.clear();
+    }
+
+    static synchronized String getStats() {
+        return "full=" + fullCount + ", partial=" + partialCount + ", skipped=" + skippedCount;
+    }
+}
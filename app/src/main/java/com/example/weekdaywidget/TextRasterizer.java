@@ -0,0 +1,343 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+import java.text.DateFormatSymbols;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Draws widget text in the configured font, since RemoteViews cannot set a Typeface. Text
+ * that changes at most daily is cached as a whole string. In time text, runs of digits,
+ * separators and AM/PM are composed from cached glyphs, so a minute tick only copies a
+ * handful of small bitmaps; words around them are drawn whole to keep kerning and the joins
+ * of script fonts.
+ */
+final class TextRasterizer {
+    private static final float MIN_TEXT_SIZE_SP = 12f;
+    private static final int STRING_CACHE_BYTES = 1024 * 1024;
+    private static final int MAX_GLYPH_SETS = 4;
+    // Room around each glyph for swashes and slants that reach past its advance
+    private static final float OVERHANG = 0.3f;
+    // Characters between time fields that are drawn from glyphs along with the digits
+    private static final String SEPARATORS = ":.,/- ";
+
+    private static final LruCache<String, Bitmap> stringCache = new LruCache<String, Bitmap>(STRING_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+    private static final Map<String, GlyphSet> glyphSets = new LinkedHashMap<String, GlyphSet>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GlyphSet> eldest) {
+            return size() > MAX_GLYPH_SETS;
+        }
+    };
+
+    private static Locale amPmLocale;
+    private static String[] amPm;
+
+    private TextRasterizer() {}
+
+    /**
+     * Returns the text drawn in the given font and color, shrunk towards 12sp to fit
+     * {@code maxWidthDp}, or null if the font is not available yet. With {@code changesOften}
+     * the bitmap is composed per call and belongs to the caller, who gives it to
+     * {@link BitmapPool#release} once pushed; otherwise it is cached and must not be released.
+     */
+    static Bitmap render(Context context, String text, FontStyle font, float textSizeSp, int color,
+                         int maxWidthDp, boolean changesOften) {
+        Typeface typeface = TypefaceRegistry.get(context, font);
+        if (typeface == null) {
+            return null;
+        }
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        float maxSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, textSizeSp, metrics);
+        float minSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, MIN_TEXT_SIZE_SP, metrics);
+        float maxWidth = maxWidthDp * metrics.density;
+
+        if (changesOften && isSimpleText(text) && hasDigit(text)) {
+            return compose(text, font, typeface, maxSize, minSize, maxWidth, color);
+        }
+        if (changesOften) {
+            return drawString(text, typeface, maxSize, minSize, maxWidth, color);
+        }
+
+        String key = text + '\u0000' + font.getId() + '_' + maxSize + '_' + Integer.toHexString(color)
+            + '_' + maxWidthDp;
+        synchronized (stringCache) {
+            Bitmap cached = stringCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Bitmap bitmap = drawString(text, typeface, maxSize, minSize, maxWidth, color);
+        synchronized (stringCache) {
+            stringCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap drawString(String text, Typeface typeface, float maxSize, float minSize, float maxWidth,
+                                     int color) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setColor(color);
+        paint.setTextSize(maxSize);
+        float width = paint.measureText(text);
+        if (width > maxWidth) {
+            paint.setTextSize(Math.max(minSize, maxSize * maxWidth / width));
+        }
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        float scale = getBudgetScale(paint.measureText(text) + 2 * paint.getTextSize() * OVERHANG,
+            metrics.bottom - metrics.top);
+        if (scale < 1f) {
+            paint.setTextSize(paint.getTextSize() * scale);
+            paint.getFontMetrics(metrics);
+        }
+
+        float pad = paint.getTextSize() * OVERHANG;
+        int bitmapWidth = Math.max(1, (int) Math.ceil(paint.measureText(text) + 2 * pad));
+        int bitmapHeight = Math.max(1, (int) Math.ceil(metrics.bottom - metrics.top));
+        Bitmap bitmap = BitmapPool.acquire(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawText(text, pad, -metrics.top, paint);
+        return bitmap;
+    }
+
+    private static Bitmap compose(String text, FontStyle font, Typeface typeface, float maxSize, float minSize,
+                                  float maxWidth, int color) {
+        String[] amPm = getAmPm();
+        GlyphSet glyphs = getGlyphSet(font, typeface, (int) maxSize);
+        int size;
+        synchronized (glyphs) {
+            // Fitting against the widest digits keeps the size, and so the glyph set, stable across ticks
+            float width = glyphs.measure(text, amPm, true);
+            float fitted = width > maxWidth ? Math.max(minSize, maxSize * maxWidth / width) : maxSize;
+            float ratio = fitted / glyphs.size;
+            size = (int) (fitted * getBudgetScale((width + 2 * glyphs.pad) * ratio, glyphs.height * ratio));
+        }
+        if (size != glyphs.size) {
+            glyphs = getGlyphSet(font, typeface, size);
+        }
+
+        synchronized (glyphs) {
+            int bitmapWidth = Math.max(1, (int) Math.ceil(glyphs.measure(text, amPm, false)) + 2 * glyphs.pad);
+            Bitmap bitmap = BitmapPool.acquire(bitmapWidth, glyphs.height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            // Alpha-only glyphs take the paint's color
+            Paint glyphPaint = new Paint();
+            glyphPaint.setColor(color);
+            Paint textPaint = new Paint(glyphs.paint);
+            textPaint.setColor(color);
+            float x = 0;
+            int i = 0;
+            while (i < text.length()) {
+                int end = getAtlasRunEnd(text, i, amPm);
+                if (end > i) {
+                    for (; i < end; i++) {
+                        Glyph glyph = glyphs.get(text.charAt(i));
+                        if (text.charAt(i) != ' ') {
+                            canvas.drawBitmap(glyph.alpha, x, 0, glyphPaint);
+                        }
+                        x += glyph.advance;
+                    }
+                } else {
+                    end = getTextRunEnd(text, i, amPm);
+                    canvas.drawText(text, i, end, x + glyphs.pad, glyphs.baseline, textPaint);
+                    x += textPaint.measureText(text, i, end);
+                    i = end;
+                }
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * End of the run of digits, separators and AM/PM markers starting at {@code start}, or
+     * {@code start} if there is none.
+     */
+    private static int getAtlasRunEnd(String text, int start, String[] amPm) {
+        int i = start;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if ((c >= '0' && c <= '9') || SEPARATORS.indexOf(c) >= 0) {
+                i++;
+                continue;
+            }
+            int marker = getAmPmLength(text, i, amPm);
+            if (marker == 0) {
+                break;
+            }
+            i += marker;
+        }
+        return i;
+    }
+
+    /**
+     * End of the run of other text starting at {@code start}, which is drawn as one string.
+     */
+    private static int getTextRunEnd(String text, int start, String[] amPm) {
+        int i = start + 1;
+        while (i < text.length() && getAtlasRunEnd(text, i, amPm) == i) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Length of the AM/PM marker at {@code start}, or 0. Only whole words count, so a word
+     * that merely contains the marker is still drawn whole.
+     */
+    private static int getAmPmLength(String text, int start, String[] amPm) {
+        if (start > 0 && Character.isLetter(text.charAt(start - 1))) {
+            return 0;
+        }
+        for (String marker : amPm) {
+            int end = start + marker.length();
+            if (!marker.isEmpty() && text.startsWith(marker, start)
+                    && (end == text.length() || !Character.isLetter(text.charAt(end)))) {
+                return marker.length();
+            }
+        }
+        return 0;
+    }
+
+    private static synchronized String[] getAmPm() {
+        // Locale.getDefault() returns the same instance until the locale changes
+        Locale locale = Locale.getDefault();
+        if (locale != amPmLocale) {
+            amPm = DateFormatSymbols.getInstance(locale).getAmPmStrings();
+            amPmLocale = locale;
+        }
+        return amPm;
+    }
+
+    private static boolean hasDigit(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the text lays out one character at a time: no combining marks, right-to-left or
+     * complex scripts, or surrogate pairs.
+     */
+    private static boolean isSimpleText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x0300) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Uniform scale that keeps an ARGB bitmap of the given size within the push budget
+     * shared with the background.
+     */
+    private static float getBudgetScale(float width, float height) {
+        double bytes = Math.ceil(width) * Math.ceil(height) * 4;
+        return bytes > BackgroundRenderer.MAX_BITMAP_BYTES
+            ? (float) Math.sqrt(BackgroundRenderer.MAX_BITMAP_BYTES / bytes) : 1f;
+    }
+
+    private static GlyphSet getGlyphSet(FontStyle font, Typeface typeface, int size) {
+        String key = font.getId() + "_" + size;
+        synchronized (glyphSets) {
+            GlyphSet glyphs = glyphSets.get(key);
+            if (glyphs == null) {
+                glyphs = new GlyphSet(typeface, size);
+                glyphSets.put(key, glyphs);
+            }
+            return glyphs;
+        }
+    }
+
+    private static final class Glyph {
+        final Bitmap alpha;
+        final float advance;
+
+        Glyph(Bitmap alpha, float advance) {
+            this.alpha = alpha;
+            this.advance = advance;
+        }
+    }
+
+    /**
+     * Glyphs of one font at one pixel size, each drawn once into an alpha-only cell of the
+     * line's full height with the baseline at the same row.
+     */
+    private static final class GlyphSet {
+        final int size;
+        final int pad;
+        final int height;
+        final float baseline;
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final float widestDigit;
+        private final SparseArray<Glyph> glyphs = new SparseArray<>();
+
+        GlyphSet(Typeface typeface, int size) {
+            this.size = size;
+            paint.setTypeface(typeface);
+            paint.setTextSize(size);
+            Paint.FontMetrics metrics = paint.getFontMetrics();
+            pad = (int) Math.ceil(size * OVERHANG);
+            height = Math.max(1, (int) Math.ceil(metrics.bottom - metrics.top));
+            baseline = -metrics.top;
+            float widest = 0;
+            for (char digit = '0'; digit <= '9'; digit++) {
+                widest = Math.max(widest, get(digit).advance);
+            }
+            widestDigit = widest;
+        }
+
+        Glyph get(char c) {
+            Glyph glyph = glyphs.get(c);
+            if (glyph == null) {
+                String s = String.valueOf(c);
+                float advance = paint.measureText(s);
+                Bitmap alpha = Bitmap.createBitmap(Math.max(1, (int) Math.ceil(advance) + 2 * pad), height,
+                    Bitmap.Config.ALPHA_8);
+                new Canvas(alpha).drawText(s, pad, baseline, paint);
+                glyph = new Glyph(alpha, advance);
+                glyphs.put(c, glyph);
+            }
+            return glyph;
+        }
+
+        /**
+         * Width of the composed text, optionally with every digit as wide as the widest one.
+         */
+        float measure(String text, String[] amPm, boolean widestDigits) {
+            float width = 0;
+            int i = 0;
+            while (i < text.length()) {
+                int end = getAtlasRunEnd(text, i, amPm);
+                if (end > i) {
+                    for (; i < end; i++) {
+                        char c = text.charAt(i);
+                        width += widestDigits && c >= '0' && c <= '9' ? widestDigit : get(c).advance;
+                    }
+                } else {
+                    end = getTextRunEnd(text, i, amPm);
+                    width += paint.measureText(text, i, end);
+                    i = end;
+                }
+            }
+            return width;
+        }
+    }
+}
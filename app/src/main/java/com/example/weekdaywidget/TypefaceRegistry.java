@@ -0,0 +1,202 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.content.res.ResourcesCompat;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide home of the font typefaces, shared by the font picker and the widget text
+ * renderer. Which fonts are on disk is read once per process and then kept up to date by
+ * {@link FontDownloader}; typefaces load off the main thread and the most recently used
+ * ones stay in memory.
+ */
+final class TypefaceRegistry {
+    private static final String TAG = "TypefaceRegistry";
+    // Typefaces kept in memory; an evicted one is loaded again off the main thread on next use
+    private static final int MAX_TYPEFACES = 6;
+    private static final String FONTS_DIR = "fonts";
+
+    private static final Map<FontStyle, Typeface> typefaces = new LinkedHashMap<FontStyle, Typeface>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FontStyle, Typeface> eldest) {
+            return size() > MAX_TYPEFACES;
+        }
+    };
+    private static final EnumSet<FontStyle> available = EnumSet.noneOf(FontStyle.class);
+    private static final EnumSet<FontStyle> loading = EnumSet.noneOf(FontStyle.class);
+    // Looked up once per font; -1 when the font has no resource
+    private static final Map<FontStyle, Integer> fontResources = new EnumMap<>(FontStyle.class);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static boolean scanned;
+    // A render asked for a downloaded font before the scan knew about it
+    private static boolean missedScan;
+
+    private TypefaceRegistry() {}
+
+    /**
+     * Reads which fonts are downloaded in the background, then runs {@code onScanned} on the
+     * main thread. Until then only pre-installed fonts count as available. Called as the
+     * process starts, so renders rarely have to scan themselves.
+     */
+    static void scan(Context context, Runnable onScanned) {
+        synchronized (TypefaceRegistry.class) {
+            if (scanned) {
+                if (onScanned != null) {
+                    mainHandler.post(onScanned);
+                }
+                return;
+            }
+        }
+        Context appContext = context.getApplicationContext();
+        WidgetRenderExecutor.execute(() -> {
+            ensureScanned(appContext);
+            if (onScanned != null) {
+                mainHandler.post(onScanned);
+            }
+        });
+    }
+
+    /**
+     * Whether the font can be used right now. Never touches disk.
+     */
+    static synchronized boolean isAvailable(FontStyle font) {
+        return font.isPreInstalled() || available.contains(font);
+    }
+
+    /**
+     * Returns the typeface if it is in memory, or null.
+     */
+    static synchronized Typeface peek(FontStyle font) {
+        return typefaces.get(font);
+    }
+
+    /**
+     * Loads the typeface in the background and runs {@code onLoaded} on the main thread if it
+     * could be loaded. Does nothing while a load of the same font is already running.
+     */
+    static void load(Context context, FontStyle font, Runnable onLoaded) {
+        synchronized (TypefaceRegistry.class) {
+            if (!loading.add(font)) {
+                return;
+            }
+        }
+        Context appContext = context.getApplicationContext();
+        WidgetRenderExecutor.execute(() -> {
+            Typeface typeface = get(appContext, font);
+            synchronized (TypefaceRegistry.class) {
+                loading.remove(font);
+            }
+            if (typeface != null && onLoaded != null) {
+                mainHandler.post(onLoaded);
+            }
+        });
+    }
+
+    /**
+     * Returns the typeface, loading it on the calling thread if needed, or null if the font
+     * is not available. Downloaded fonts count as unavailable until the scan has finished;
+     * the widgets using them are then rendered again. Must not be called on the main thread.
+     */
+    static Typeface get(Context context, FontStyle font) {
+        synchronized (TypefaceRegistry.class) {
+            if (!scanned && !font.isPreInstalled()) {
+                missedScan = true;
+                return null;
+            }
+            Typeface typeface = typefaces.get(font);
+            if (typeface != null || !isAvailable(font)) {
+                return typeface;
+            }
+        }
+
+        Typeface typeface = loadTypeface(context, font);
+        synchronized (TypefaceRegistry.class) {
+            if (typeface != null) {
+                typefaces.put(font, typeface);
+            } else {
+                // A file that cannot be loaded is treated like a missing one
+                available.remove(font);
+            }
+        }
+        return typeface;
+    }
+
+    /**
+     * Called by the downloader once a font file is complete.
+     */
+    static synchronized void onFontDownloaded(FontStyle font) {
+        available.add(font);
+        // A download replaces any earlier file of the same font
+        typefaces.remove(font);
+    }
+
+    static File getFontFile(Context context, FontStyle font) {
+        return new File(context.getFilesDir(), FONTS_DIR + "/" + font.getFileName() + ".ttf");
+    }
+
+    private static void ensureScanned(Context context) {
+        synchronized (TypefaceRegistry.class) {
+            if (scanned) {
+                return;
+            }
+        }
+        File[] files = new File(context.getFilesDir(), FONTS_DIR).listFiles();
+        boolean rerender;
+        synchronized (TypefaceRegistry.class) {
+            if (scanned) {
+                return;
+            }
+            if (files != null) {
+                for (File file : files) {
+                    for (FontStyle font : FontStyle.values()) {
+                        if (file.getName().equals(font.getFileName() + ".ttf")) {
+                            available.add(font);
+                        }
+                    }
+                }
+            }
+            scanned = true;
+            rerender = missedScan;
+            missedScan = false;
+            Log.d(TAG, "Found " + available.size() + " downloaded fonts");
+        }
+        if (rerender) {
+            WidgetUpdateScheduler.onFontsScanned(context);
+        }
+    }
+
+    private static Typeface loadTypeface(Context context, FontStyle font) {
+        try {
+            if (font.isPreInstalled()) {
+                int fontResource = getFontResource(context, font);
+                return fontResource != -1 ? ResourcesCompat.getFont(context, fontResource) : null;
+            }
+            return Typeface.createFromFile(getFontFile(context, font));
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading font " + font.getName(), e);
+            return null;
+        }
+    }
+
+    private static int getFontResource(Context context, FontStyle font) {
+        synchronized (fontResources) {
+            Integer fontResource = fontResources.get(font);
+            if (fontResource == null) {
+                int id = context.getResources().getIdentifier(font.getFileName(), "font", context.getPackageName());
+                fontResource = id != 0 ? id : -1;
+                fontResources.put(font, fontResource);
+            }
+            return fontResource;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.weekdaywidget;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Computes the next wall-clock boundary at which a widget's text can change.
+ * Time comes from an injectable {@link TimeSource} so the calculation is testable.
+ */
+final class UpdateClock {
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    interface TimeSource {
+        long currentTimeMillis();
+        TimeZone getTimeZone();
+    }
+
+    static final TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public TimeZone getTimeZone() {
+            return TimeZone.getDefault();
+        }
+    };
+
+    private final TimeSource timeSource;
+
+    UpdateClock(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    long now() {
+        return timeSource.currentTimeMillis();
+    }
+
+    /**
+     * Returns the wall-clock time at which a widget with the given config must next be
+     * re-rendered, or {@link Long#MAX_VALUE} if the launcher keeps it current on its own.
+     */
+    long nextFireTime(WidgetConfig config, long now) {
+        if (WeekDayWidgetSimple.usesHostClock(config)) {
+            return Long.MAX_VALUE;
+        }
+        if (config.needsFrequentUpdates()) {
+            return nextMinuteBoundary(now);
+        }
+        long midnight = nextMidnight(now);
+        return Math.min(midnight, nextOffsetTransition(now, midnight));
+    }
+
+    /**
+     * Next local minute boundary strictly after {@code now}. Works in local time so zones
+     * with offsets that are not whole minutes still tick on the displayed minute.
+     */
+    long nextMinuteBoundary(long now) {
+        int offset = timeSource.getTimeZone().getOffset(now);
+        long local = now + offset;
+        long nextLocal = local - Math.floorMod(local, MINUTE_MILLIS) + MINUTE_MILLIS;
+        return nextLocal - offset;
+    }
+
+    /**
+     * Next local midnight strictly after {@code now}; Calendar applies the zone's DST rules.
+     */
+    long nextMidnight(long now) {
+        Calendar calendar = Calendar.getInstance(timeSource.getTimeZone());
+        calendar.setTimeInMillis(now);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * First instant in {@code (now, limit]} at which the zone's UTC offset differs from the
+     * offset at {@code now}, or {@link Long#MAX_VALUE} if it does not change before the limit.
+     */
+    long nextOffsetTransition(long now, long limit) {
+        TimeZone zone = timeSource.getTimeZone();
+        int startOffset = zone.getOffset(now);
+        if (zone.getOffset(limit) == startOffset) {
+            return Long.MAX_VALUE;
+        }
+
+        // Binary search down to the millisecond: about 27 steps for a day, and exact even for
+        // historical transitions that are not on a minute, so the result is always after now
+        long low = now;
+        long high = limit;
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if (zone.getOffset(mid) == startOffset) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
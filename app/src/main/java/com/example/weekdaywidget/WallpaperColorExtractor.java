@@ -3,16 +3,26 @@ package com.example.weekdaywidget;
 import android.app.WallpaperManager;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.util.Log;
-import androidx.palette.graphics.Palette;
+import java.io.FileDescriptor;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class WallpaperColorExtractor {
     private static final String TAG = "WallpaperColorExtractor";
+    private static final int DEFAULT_PRIMARY_COLOR = 0xFF6200EE;
+    // Side length the wallpaper is reduced to before quantizing
+    private static final int SAMPLE_SIZE = 100;
 
     public static class WallpaperColors {
         public final int primary;
@@ -32,56 +42,302 @@ public class WallpaperColorExtractor {
      * Extracts dominant colors from the current wallpaper
      */
     public static WallpaperColors extractWallpaperColors(Context context) {
+        WallpaperColors colors = extract(context);
+        return colors != null ? colors : getDefaultColors(context);
+    }
+
+    /**
+     * Extracts dominant colors from the current wallpaper, or returns null if it cannot be read.
+     */
+    static WallpaperColors extract(Context context) {
+        long start = SystemClock.elapsedRealtime();
         try {
             WallpaperManager wallpaperManager = WallpaperManager.getInstance(context);
             
-            // Try to get wallpaper drawable with proper error handling
-            Drawable wallpaperDrawable = null;
-            try {
-                wallpaperDrawable = wallpaperManager.getDrawable();
-            } catch (SecurityException e) {
-                Log.w(TAG, "No permission to access wallpaper, using default colors");
-                return getDefaultColors(context);
-            } catch (Exception e) {
-                Log.w(TAG, "Error accessing wallpaper, using default colors", e);
-                return getDefaultColors(context);
+            // Decode the wallpaper file straight to a small size where the platform allows it
+            Bitmap wallpaperBitmap = decodeWallpaperFile(wallpaperManager);
+            String source = "file";
+            long peakBytes = wallpaperBitmap != null ? wallpaperBitmap.getAllocationByteCount() : 0;
+            if (wallpaperBitmap == null) {
+                // Try to get wallpaper drawable with proper error handling
+                Drawable wallpaperDrawable = null;
+                try {
+                    wallpaperDrawable = wallpaperManager.getDrawable();
+                } catch (SecurityException e) {
+                    Log.w(TAG, "No permission to access wallpaper, using default colors");
+                    return null;
+                } catch (Exception e) {
+                    Log.w(TAG, "Error accessing wallpaper, using default colors", e);
+                    return null;
+                }
+                
+                if (wallpaperDrawable == null) {
+                    return null;
+                }
+
+                // The drawable holds the fully decoded wallpaper
+                source = "drawable";
+                peakBytes = 4L * Math.max(wallpaperDrawable.getIntrinsicWidth(), 0)
+                    * Math.max(wallpaperDrawable.getIntrinsicHeight(), 0);
+
+                // Convert drawable to bitmap
+                wallpaperBitmap = drawableToBitmap(wallpaperDrawable);
+                if (wallpaperBitmap == null) {
+                    return null;
+                }
             }
+
+            WallpaperColors colors = quantize(wallpaperBitmap);
+            Log.d(TAG, "Extracted wallpaper colors from " + source + " in "
+                + (SystemClock.elapsedRealtime() - start) + " ms, largest bitmap " + peakBytes + " bytes");
+            return colors;
             
-            if (wallpaperDrawable == null) {
-                return getDefaultColors(context);
+        } catch (Exception e) {
+            Log.e(TAG, "Error extracting wallpaper colors", e);
+            return null;
+        }
+    }
+
+    /**
+     * Material You colors the system derived from the wallpaper and theme (API 31+): three
+     * resource lookups. The accents are mid tones whatever the wallpaper, so whether it is
+     * dark comes from the platform's hints. Returns null on older releases.
+     */
+    static WallpaperColors fromSystemPalette(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return null;
+        }
+        try {
+            int primary = context.getColor(android.R.color.system_accent1_500);
+            int secondary = context.getColor(android.R.color.system_accent2_500);
+            int accent = context.getColor(android.R.color.system_accent3_500);
+            android.app.WallpaperColors platformColors = WallpaperManager.getInstance(context)
+                .getWallpaperColors(WallpaperManager.FLAG_SYSTEM);
+            // Without platform colors nothing is known about the wallpaper, so treat it as light
+            boolean isDark = platformColors != null && isDarkWallpaper(platformColors);
+            return new WallpaperColors(primary, secondary, accent, isDark);
+        } catch (Exception e) {
+            Log.w(TAG, "Error reading system palette", e);
+            return null;
+        }
+    }
+
+    /**
+     * Colors the platform already computed for the static wallpaper (API 27+). Returns null
+     * on older releases, or when the platform has none, e.g. for some live wallpapers.
+     */
+    static WallpaperColors fromPlatformColors(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+            return null;
+        }
+        try {
+            android.app.WallpaperColors platformColors = WallpaperManager.getInstance(context)
+                .getWallpaperColors(WallpaperManager.FLAG_SYSTEM);
+            if (platformColors == null) {
+                return null;
             }
+            int primary = platformColors.getPrimaryColor().toArgb();
+            int secondary = platformColors.getSecondaryColor() != null
+                ? platformColors.getSecondaryColor().toArgb() : primary;
+            int accent = platformColors.getTertiaryColor() != null
+                ? platformColors.getTertiaryColor().toArgb() : secondary;
+            return new WallpaperColors(primary, secondary, accent, isDarkWallpaper(platformColors));
+        } catch (Exception e) {
+            Log.w(TAG, "Error reading platform wallpaper colors", e);
+            return null;
+        }
+    }
 
-            // Convert drawable to bitmap
-            Bitmap wallpaperBitmap = drawableToBitmap(wallpaperDrawable);
-            if (wallpaperBitmap == null) {
-                return getDefaultColors(context);
+    /**
+     * Whether the platform considers the wallpaper dark. Its hints are public from API 31;
+     * below that, or when it gives none, the primary color decides.
+     */
+    private static boolean isDarkWallpaper(android.app.WallpaperColors platformColors) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            int hints = platformColors.getColorHints();
+            if ((hints & android.app.WallpaperColors.HINT_SUPPORTS_DARK_THEME) != 0) {
+                return true;
+            }
+            if ((hints & android.app.WallpaperColors.HINT_SUPPORTS_DARK_TEXT) != 0) {
+                return false;
             }
+        }
+        return ColorMath.isDark(platformColors.getPrimaryColor().toArgb());
+    }
 
-            // Scale down bitmap for faster processing
-            Bitmap scaledBitmap = scaleBitmap(wallpaperBitmap, 100, 100);
-            
-            // Use Palette library to extract colors
-            Palette palette = Palette.from(scaledBitmap).generate();
-            
-            // Get dominant colors
-            int primaryColor = palette.getDominantColor(Color.parseColor("#6200EE"));
-            int vibrantColor = palette.getVibrantColor(primaryColor);
-            int mutedColor = palette.getMutedColor(primaryColor);
-            
-            // Determine if the wallpaper is dark
-            boolean isDark = isColorDark(primaryColor);
-            
-            // Clean up
-            if (scaledBitmap != wallpaperBitmap) {
-                scaledBitmap.recycle();
+    /**
+     * Extracts colors from the part of the wallpaper behind a screen region given as
+     * {left, top, right, bottom} fractions of the screen, decoding only that part. Assumes
+     * the wallpaper is centered and scaled to cover the screen, which is how launchers show
+     * a wallpaper that does not scroll. Returns null if the wallpaper file cannot be read.
+     */
+    static WallpaperColors extractRegion(Context context, float[] region) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return null;
+        }
+        long start = SystemClock.elapsedRealtime();
+        ParcelFileDescriptor descriptor = openWallpaperFile(WallpaperManager.getInstance(context));
+        if (descriptor == null) {
+            return null;
+        }
+
+        try (ParcelFileDescriptor fileDescriptor = descriptor) {
+            BitmapRegionDecoder decoder = newRegionDecoder(fileDescriptor.getFileDescriptor());
+            try {
+                DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+                Rect rect = mapToWallpaper(region, decoder.getWidth(), decoder.getHeight(),
+                    metrics.widthPixels, metrics.heightPixels);
+                if (rect.width() <= 0 || rect.height() <= 0) {
+                    return null;
+                }
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = getSampleSize(rect.width(), rect.height());
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                options.inMutable = true;
+                Bitmap bitmap = decoder.decodeRegion(rect, options);
+                if (bitmap == null) {
+                    return null;
+                }
+                long decodedBytes = bitmap.getAllocationByteCount();
+                WallpaperColors colors = quantize(bitmap);
+                Log.d(TAG, "Extracted region colors in " + (SystemClock.elapsedRealtime() - start)
+                    + " ms, largest bitmap " + decodedBytes + " bytes");
+                return colors;
+            } finally {
+                decoder.recycle();
             }
-            wallpaperBitmap.recycle();
-            
-            return new WallpaperColors(primaryColor, vibrantColor, mutedColor, isDark);
-            
         } catch (Exception e) {
-            Log.e(TAG, "Error extracting wallpaper colors", e);
-            return getDefaultColors(context);
+            Log.e(TAG, "Error extracting region colors", e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens a region decoder, avoiding the overload deprecated in API 31 where it can.
+     */
+    private static BitmapRegionDecoder newRegionDecoder(FileDescriptor fileDescriptor) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(fileDescriptor);
+        }
+        return newRegionDecoderLegacy(fileDescriptor);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoderLegacy(FileDescriptor fileDescriptor) throws IOException {
+        // The shareable flag is ignored since API 21
+        return BitmapRegionDecoder.newInstance(fileDescriptor, false);
+    }
+
+    /**
+     * Dominant, vibrant and muted colors of a bitmap, which is handed to the pool afterwards.
+     */
+    private static WallpaperColors quantize(Bitmap wallpaperBitmap) {
+        // Scale down bitmap for faster processing
+        Bitmap scaledBitmap = scaleBitmap(wallpaperBitmap, SAMPLE_SIZE, SAMPLE_SIZE);
+        
+        int width = scaledBitmap.getWidth();
+        int height = scaledBitmap.getHeight();
+        int[] pixels = new int[width * height];
+        scaledBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        int[] extracted = ColorQuantizer.quantize(pixels, pixels.length, DEFAULT_PRIMARY_COLOR);
+        
+        // Hand both back for the next extraction
+        if (scaledBitmap != wallpaperBitmap) {
+            BitmapPool.release(scaledBitmap);
+        }
+        BitmapPool.release(wallpaperBitmap);
+        
+        // Determine if the wallpaper is dark
+        boolean isDark = ColorMath.isDark(extracted[0]);
+        return new WallpaperColors(extracted[0], extracted[1], extracted[2], isDark);
+    }
+
+    /**
+     * Maps screen fractions to wallpaper pixels for a wallpaper centered and scaled to cover
+     * a screen of the given size.
+     */
+    private static Rect mapToWallpaper(float[] region, int wallpaperWidth, int wallpaperHeight,
+                                       int screenWidth, int screenHeight) {
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            return new Rect(0, 0, wallpaperWidth, wallpaperHeight);
+        }
+        float scale = Math.min((float) wallpaperWidth / screenWidth, (float) wallpaperHeight / screenHeight);
+        float offsetX = (wallpaperWidth - screenWidth * scale) / 2f;
+        float offsetY = (wallpaperHeight - screenHeight * scale) / 2f;
+        return new Rect(
+            Math.max(0, Math.round(offsetX + region[0] * screenWidth * scale)),
+            Math.max(0, Math.round(offsetY + region[1] * screenHeight * scale)),
+            Math.min(wallpaperWidth, Math.round(offsetX + region[2] * screenWidth * scale)),
+            Math.min(wallpaperHeight, Math.round(offsetY + region[3] * screenHeight * scale)));
+    }
+
+    /**
+     * Largest power-of-two subsampling that keeps both sides at least {@link #SAMPLE_SIZE}.
+     */
+    private static int getSampleSize(int width, int height) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= SAMPLE_SIZE && height / (sampleSize * 2) >= SAMPLE_SIZE) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static ParcelFileDescriptor openWallpaperFile(WallpaperManager wallpaperManager) {
+        try {
+            return wallpaperManager.getWallpaperFile(WallpaperManager.FLAG_SYSTEM);
+        } catch (Exception e) {
+            Log.w(TAG, "Wallpaper file not readable");
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the static wallpaper's file subsampled towards {@link #SAMPLE_SIZE}, so the
+     * full image is never in memory.
+     * Returns null for live wallpapers, without file access, or below API 24.
+     */
+    private static Bitmap decodeWallpaperFile(WallpaperManager wallpaperManager) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return null;
+        }
+        ParcelFileDescriptor descriptor = openWallpaperFile(wallpaperManager);
+        if (descriptor == null) {
+            return null;
+        }
+
+        try (ParcelFileDescriptor fileDescriptor = descriptor) {
+            FileDescriptor fd = fileDescriptor.getFileDescriptor();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(fd, null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            int sampleSize = getSampleSize(options.outWidth, options.outHeight);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inBitmap = BitmapPool.acquireForDecode((options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize, Bitmap.Config.ARGB_8888);
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap could not be reused for this image
+                BitmapPool.release(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+            }
+            if (bitmap != options.inBitmap) {
+                BitmapPool.release(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IOException e) {
+            Log.e(TAG, "Error decoding wallpaper file", e);
+            return null;
         }
     }
 
@@ -89,9 +345,18 @@ public class WallpaperColorExtractor {
      * Creates adaptive gradient based on wallpaper colors and system theme
      */
     public static AdaptiveGradientStyle createAdaptiveGradient(Context context) {
-        WallpaperColors colors = extractWallpaperColors(context);
-        boolean isSystemDarkMode = isSystemInDarkMode(context);
-        
+        return WallpaperPaletteCache.getAdaptiveGradient(context, isSystemInDarkMode(context));
+    }
+
+    /**
+     * Adaptive gradient matching the wallpaper behind one widget, see
+     * {@link WidgetBoundsStore#getRegionBucket}.
+     */
+    static AdaptiveGradientStyle createAdaptiveGradient(Context context, int regionBucket) {
+        return WallpaperPaletteCache.getAdaptiveGradient(context, isSystemInDarkMode(context), regionBucket);
+    }
+
+    static AdaptiveGradientStyle createAdaptiveGradient(WallpaperColors colors, boolean isSystemDarkMode) {
         // Combine wallpaper darkness with system dark mode
         boolean shouldUseDarkTheme = colors.isDark || isSystemDarkMode;
         
@@ -104,13 +369,13 @@ public class WallpaperColorExtractor {
 
     private static AdaptiveGradientStyle createDarkAdaptiveGradient(WallpaperColors colors) {
         // Create darker, muted versions of wallpaper colors
-        int darkStart = darkenColor(colors.primary, 0.7f);
-        int darkEnd = darkenColor(colors.secondary, 0.8f);
+        int darkStart = ColorMath.darken(colors.primary, 0.7f);
+        int darkEnd = ColorMath.darken(colors.secondary, 0.8f);
         
         return new AdaptiveGradientStyle(
             "Dark Adaptive",
-            String.format("#%06X", (0xFFFFFF & darkStart)),
-            String.format("#%06X", (0xFFFFFF & darkEnd)),
+            darkStart,
+            darkEnd,
             270,
             true
         );
@@ -118,13 +383,13 @@ public class WallpaperColorExtractor {
 
     private static AdaptiveGradientStyle createLightAdaptiveGradient(WallpaperColors colors) {
         // Create lighter, more vibrant versions of wallpaper colors
-        int lightStart = lightenColor(colors.primary, 0.3f);
-        int lightEnd = lightenColor(colors.secondary, 0.4f);
+        int lightStart = ColorMath.lighten(colors.primary, 0.3f);
+        int lightEnd = ColorMath.lighten(colors.secondary, 0.4f);
         
         return new AdaptiveGradientStyle(
             "Light Adaptive",
-            String.format("#%06X", (0xFFFFFF & lightStart)),
-            String.format("#%06X", (0xFFFFFF & lightEnd)),
+            lightStart,
+            lightEnd,
             270,
             false
         );
@@ -151,7 +416,7 @@ public class WallpaperColorExtractor {
                 width = height = 100; // Fallback size
             }
             
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Bitmap bitmap = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
             android.graphics.Canvas canvas = new android.graphics.Canvas(bitmap);
             drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
             drawable.draw(canvas);
@@ -178,43 +443,17 @@ public class WallpaperColorExtractor {
             int newWidth = Math.round(width * scale);
             int newHeight = Math.round(height * scale);
             
-            return Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, false);
+            Bitmap scaled = BitmapPool.acquire(newWidth, newHeight, Bitmap.Config.ARGB_8888);
+            new android.graphics.Canvas(scaled).drawBitmap(bitmap, null,
+                new android.graphics.RectF(0, 0, newWidth, newHeight), null);
+            return scaled;
         } catch (Exception e) {
             Log.e(TAG, "Error scaling bitmap", e);
             return bitmap;
         }
     }
 
-    private static boolean isColorDark(int color) {
-        // Calculate luminance using standard formula
-        double red = Color.red(color) / 255.0;
-        double green = Color.green(color) / 255.0;
-        double blue = Color.blue(color) / 255.0;
-        
-        // Apply gamma correction
-        red = red < 0.03928 ? red / 12.92 : Math.pow((red + 0.055) / 1.055, 2.4);
-        green = green < 0.03928 ? green / 12.92 : Math.pow((green + 0.055) / 1.055, 2.4);
-        blue = blue < 0.03928 ? blue / 12.92 : Math.pow((blue + 0.055) / 1.055, 2.4);
-        
-        double luminance = 0.2126 * red + 0.7152 * green + 0.0722 * blue;
-        return luminance < 0.5;
-    }
-
-    private static int darkenColor(int color, float factor) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        hsv[2] *= factor; // Reduce brightness
-        return Color.HSVToColor(hsv);
-    }
-
-    private static int lightenColor(int color, float factor) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        hsv[2] = Math.min(1.0f, hsv[2] + factor); // Increase brightness
-        return Color.HSVToColor(hsv);
-    }
-
-    private static WallpaperColors getDefaultColors(Context context) {
+    static WallpaperColors getDefaultColors(Context context) {
         boolean isDark = isSystemInDarkMode(context);
         if (isDark) {
             return new WallpaperColors(
@@ -0,0 +1,301 @@
+package com.example.weekdaywidget;
+
+import android.app.WallpaperManager;
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wallpaper colors resolved at most once per wallpaper and shared by every adaptive widget.
+ * Colors come from the cheapest source the device has: the Material You palette, then the
+ * platform's wallpaper colors, and only then a decode of the wallpaper. Decoded colors are
+ * also kept in a small file keyed by the wallpaper id, so a new process reuses them; the
+ * derived gradients are kept per dark mode. Widgets whose
+ * position is known get colors from the part of the wallpaper behind them instead, kept in
+ * memory per region of the screen.
+ */
+final class WallpaperPaletteCache {
+    private static final String TAG = "WallpaperPaletteCache";
+    private static final String FILE_NAME = "wallpaper_palette.bin";
+    private static final int MAGIC = 0x57504C54; // "WPLT"
+    private static final int VERSION = 1;
+    // magic, version, key, primary, secondary, accent, isDark
+    private static final int FILE_SIZE = 28;
+
+    private static WallpaperColorExtractor.WallpaperColors colors;
+    private static int colorsKey;
+    // Light and dark variants of the adaptive gradient for the cached colors
+    private static final AdaptiveGradientStyle[] gradients = new AdaptiveGradientStyle[2];
+    // Colors of screen regions of the same wallpaper, by region bucket
+    private static final SparseArray<WallpaperColorExtractor.WallpaperColors> regionColors = new SparseArray<>();
+    // Stands in for the wallpaper id below API 24, bumped on every wallpaper change
+    private static int changeCount;
+    // The current wallpaper key, see getWallpaperKey
+    private static int wallpaperKey;
+    private static boolean wallpaperKeyValid;
+    // Bumped whenever the cached key is dropped, so a key computed meanwhile is not kept
+    private static int keyGeneration;
+    private static boolean listening;
+
+    private WallpaperPaletteCache() {}
+
+    /**
+     * Identifies the current wallpaper: its id where the platform has one, otherwise a count
+     * of wallpaper changes seen by this process. On API 31+ it also covers the system accent,
+     * which can change without a new wallpaper. Computed once and kept until
+     * {@link #invalidate} or a configuration change.
+     */
+    static int getWallpaperKey(Context context) {
+        int generation;
+        synchronized (WallpaperPaletteCache.class) {
+            if (wallpaperKeyValid) {
+                return wallpaperKey;
+            }
+            generation = keyGeneration;
+        }
+        listenForChanges(context);
+        int key = computeWallpaperKey(context);
+        synchronized (WallpaperPaletteCache.class) {
+            // Not kept if the wallpaper changed meanwhile, or where no change would be seen
+            if (generation == keyGeneration && Build.VERSION.SDK_INT != Build.VERSION_CODES.O) {
+                wallpaperKey = key;
+                wallpaperKeyValid = true;
+            }
+        }
+        return key;
+    }
+
+    private static int computeWallpaperKey(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                int id = WallpaperManager.getInstance(context).getWallpaperId(WallpaperManager.FLAG_SYSTEM);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    return id * 31 + context.getColor(android.R.color.system_accent1_500);
+                }
+                return id;
+            } catch (Exception e) {
+                Log.w(TAG, "Error reading wallpaper id", e);
+            }
+        }
+        synchronized (WallpaperPaletteCache.class) {
+            return changeCount;
+        }
+    }
+
+    /**
+     * Watches for wallpaper and theme changes while the process lives. WALLPAPER_CHANGED no
+     * longer reaches manifest receivers from API 26, so the platform's color listener stands
+     * in for it from API 27; a configuration change can carry a new system theme.
+     */
+    private static void listenForChanges(Context context) {
+        Context appContext = context.getApplicationContext();
+        synchronized (WallpaperPaletteCache.class) {
+            if (listening || appContext == null) {
+                return;
+            }
+            listening = true;
+        }
+
+        appContext.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                onThemeMayHaveChanged(appContext);
+            }
+
+            @Override
+            public void onLowMemory() {
+            }
+        });
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            try {
+                WallpaperManager.getInstance(appContext).addOnColorsChangedListener((platformColors, which) -> {
+                    if ((which & WallpaperManager.FLAG_SYSTEM) != 0) {
+                        WidgetUpdateScheduler.onWallpaperChanged(appContext, null);
+                    }
+                }, new Handler(Looper.getMainLooper()));
+            } catch (Exception e) {
+                Log.w(TAG, "Error listening for wallpaper colors", e);
+            }
+        }
+    }
+
+    /**
+     * Re-checks the key after a configuration change and re-renders the adaptive widgets only
+     * if the system accent moved with it. Below API 31 the key does not depend on the theme.
+     * Runs on the render pool, as the cache's lock is held through wallpaper decodes.
+     */
+    private static void onThemeMayHaveChanged(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return;
+        }
+        WidgetRenderExecutor.execute(() -> {
+            int previous;
+            synchronized (WallpaperPaletteCache.class) {
+                if (!wallpaperKeyValid) {
+                    // Nothing cached, the next render computes the key anyway
+                    return;
+                }
+                previous = wallpaperKey;
+                wallpaperKeyValid = false;
+                keyGeneration++;
+            }
+            if (getWallpaperKey(context) != previous) {
+                WidgetUpdateScheduler.onWallpaperChanged(context, null);
+            }
+        });
+    }
+
+    /**
+     * The adaptive gradient for the current wallpaper and system theme. Decodes the wallpaper
+     * only if no cheaper source has colors and neither memory nor disk holds them for this
+     * wallpaper; concurrent callers wait for that one extraction.
+     */
+    static synchronized AdaptiveGradientStyle getAdaptiveGradient(Context context, boolean systemDarkMode) {
+        int key = getWallpaperKey(context);
+        if (colors == null || colorsKey != key) {
+            gradients[0] = null;
+            gradients[1] = null;
+            regionColors.clear();
+            colors = resolveColors(context, key);
+            if (colors == null) {
+                // Not cached, so the next render tries the wallpaper again
+                return WallpaperColorExtractor.createAdaptiveGradient(
+                    WallpaperColorExtractor.getDefaultColors(context), systemDarkMode);
+            }
+            colorsKey = key;
+        }
+
+        int variant = systemDarkMode ? 1 : 0;
+        if (gradients[variant] == null) {
+            gradients[variant] = WallpaperColorExtractor.createAdaptiveGradient(colors, systemDarkMode);
+        }
+        return gradients[variant];
+    }
+
+    /**
+     * The adaptive gradient for the wallpaper behind one region of the screen, see
+     * {@link WidgetBoundsStore#getRegionBucket}. Falls back to the whole wallpaper when the
+     * region is unknown or its part of the wallpaper cannot be decoded.
+     */
+    static synchronized AdaptiveGradientStyle getAdaptiveGradient(Context context, boolean systemDarkMode,
+                                                                  int regionBucket) {
+        // Also validates the cache against the current wallpaper
+        AdaptiveGradientStyle whole = getAdaptiveGradient(context, systemDarkMode);
+        if (regionBucket == WidgetBoundsStore.UNKNOWN_REGION || colors == null) {
+            return whole;
+        }
+        WallpaperColorExtractor.WallpaperColors region = regionColors.get(regionBucket);
+        if (region == null) {
+            region = WallpaperColorExtractor.extractRegion(context, WidgetBoundsStore.getRegion(regionBucket));
+            if (region == null) {
+                // Remembered as the whole wallpaper so the decode is not retried for this wallpaper
+                region = colors;
+            }
+            regionColors.put(regionBucket, region);
+        }
+        return region == colors ? whole : WallpaperColorExtractor.createAdaptiveGradient(region, systemDarkMode);
+    }
+
+    /**
+     * Drops the cached colors after a wallpaper change. Waits for any extraction in progress
+     * and deletes a file, so it must not be called on the main thread.
+     */
+    static synchronized void invalidate(Context context) {
+        colors = null;
+        regionColors.clear();
+        changeCount++;
+        wallpaperKeyValid = false;
+        keyGeneration++;
+        getFile(context).delete();
+    }
+
+    /**
+     * Tries each color source from cheapest to most expensive. Only decoded colors are
+     * written to disk; the others are cheaper to read again than the file.
+     */
+    private static WallpaperColorExtractor.WallpaperColors resolveColors(Context context, int key) {
+        WallpaperColorExtractor.WallpaperColors resolved = WallpaperColorExtractor.fromSystemPalette(context);
+        String source = "system palette";
+        if (resolved == null) {
+            resolved = WallpaperColorExtractor.fromPlatformColors(context);
+            source = "platform wallpaper colors";
+        }
+        if (resolved == null) {
+            resolved = readFromDisk(context, key);
+            source = "disk";
+        }
+        if (resolved == null) {
+            resolved = WallpaperColorExtractor.extract(context);
+            source = "wallpaper decode";
+            if (resolved != null) {
+                writeToDisk(context, key, resolved);
+            }
+        }
+        if (resolved != null) {
+            Log.d(TAG, "Adaptive colors from " + source);
+        }
+        return resolved;
+    }
+
+    private static WallpaperColorExtractor.WallpaperColors readFromDisk(Context context, int key) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] bytes = new byte[FILE_SIZE];
+        try (FileInputStream input = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = input.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading wallpaper palette", e);
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != key) {
+            return null;
+        }
+        return new WallpaperColorExtractor.WallpaperColors(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+            buffer.getInt() != 0);
+    }
+
+    private static void writeToDisk(Context context, int key, WallpaperColorExtractor.WallpaperColors colors) {
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(key)
+            .putInt(colors.primary).putInt(colors.secondary).putInt(colors.accent).putInt(colors.isDark ? 1 : 0);
+
+        File file = getFile(context);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(buffer.array());
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing wallpaper palette", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+}
@@ -1,242 +1,456 @@
 package com.example.weekdaywidget;
 
-import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.os.SystemClock;
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.TypedValue;
 import android.util.Log;
 import android.widget.RemoteViews;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
 
 public class WeekDayWidgetSimple extends AppWidgetProvider {
     private static final String TAG = "WeekDayWidget";
-    private static final String PREFS_NAME = "com.example.weekdaywidget.preferences";
-    private static final String PREF_FORMAT_KEY = "format_";
-    private static final String PREF_BOX_KEY = "box_";
-    private static final String PREF_GRADIENT_KEY = "gradient_";
-    private static final String PREF_FONT_KEY = "font_";
-    private static final String ACTION_UPDATE_WIDGET = "com.example.weekdaywidget.UPDATE_WIDGET";
+    // Resizes within the same step reuse the last render
+    private static final int SIZE_BUCKET_DP = 20;
+    // The font widget_layout_clock declares for its TextClock
+    private static final FontStyle HOST_CLOCK_FONT = FontStyle.DANCING_SCRIPT;
+    // Padding around the text in widget_layout_enhanced
+    private static final int CONTENT_PADDING_DP = 12;
+    // Indexed by angle / 45
+    private static final int[] GRADIENT_OVERLAYS = {
+        R.drawable.gradient_overlay_0, R.drawable.gradient_overlay_45,
+        R.drawable.gradient_overlay_90, R.drawable.gradient_overlay_135,
+        R.drawable.gradient_overlay_180, R.drawable.gradient_overlay_225,
+        R.drawable.gradient_overlay_270, R.drawable.gradient_overlay_315
+    };
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
-            scheduleNextUpdate(context, appWidgetId);
-        }
+        WidgetUpdateQueue.request(context, appWidgetIds, goAsync());
     }
 
     @Override
     public void onDeleted(Context context, int[] appWidgetIds) {
-        // Clean up preferences when widgets are deleted
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        for (int appWidgetId : appWidgetIds) {
-            editor.remove(PREF_FORMAT_KEY + appWidgetId);
-            editor.remove(PREF_BOX_KEY + appWidgetId);
-            editor.remove(PREF_GRADIENT_KEY + appWidgetId);
-            editor.remove(PREF_FONT_KEY + appWidgetId);
-            cancelUpdate(context, appWidgetId);
-        }
-        editor.apply();
+        // Clean up stored configs when widgets are deleted
+        WidgetConfigCache.remove(context, appWidgetIds);
+
+        WidgetUpdateScheduler.remove(appWidgetIds);
+        WidgetUpdateScheduler.reschedule(context);
+        RenderStateCache.remove(appWidgetIds);
+        RenderGenerations.remove(appWidgetIds);
+        WidgetBoundsStore.remove(context, appWidgetIds);
+    }
+
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
+                                          int appWidgetId, Bundle newOptions) {
+        // Only pushes if the new size falls into a different bucket
+        WidgetUpdateQueue.request(context, new int[] {appWidgetId}, goAsync());
+    }
+
+    @Override
+    public void onDisabled(Context context) {
+        // Last widget removed, drop the shared alarm
+        WidgetUpdateScheduler.cancel(context);
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        // Ahead of any render this broadcast queues
+        TypefaceRegistry.scan(context, null);
         super.onReceive(context, intent);
         
-        if (ACTION_UPDATE_WIDGET.equals(intent.getAction())) {
-            int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, 
-                                                AppWidgetManager.INVALID_APPWIDGET_ID);
-            if (appWidgetId != AppWidgetManager.INVALID_APPWIDGET_ID) {
-                AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-                updateAppWidget(context, appWidgetManager, appWidgetId);
-                scheduleNextUpdate(context, appWidgetId);
-            }
+        String action = intent.getAction();
+        if (WidgetUpdateScheduler.ACTION_UPDATE_WIDGET.equals(action)) {
+            WidgetUpdateScheduler.onTick(context, goAsync());
+        } else if (Intent.ACTION_TIME_CHANGED.equals(action)
+                || Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                || Intent.ACTION_DATE_CHANGED.equals(action)) {
+            // TextClock widgets follow clock changes on their own
+            WidgetUpdateScheduler.onTimeBaseChanged(context, false, goAsync());
+        } else if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
+            // Day and month names change for every widget
+            WidgetUpdateScheduler.onTimeBaseChanged(context, true, goAsync());
+        } else if (Intent.ACTION_WALLPAPER_CHANGED.equals(action)) {
+            WidgetUpdateScheduler.onWallpaperChanged(context, goAsync());
         }
     }
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
+    /**
+     * Renders and pushes a group of widgets that share a config, size bucket and region bucket,
+     * each with the render generation it was requested under. Text, colors and styling are resolved
+     * once per group; widgets whose text alone changed share one partial update. Work for a
+     * widget is abandoned as soon as a newer render of it has been requested.
+     *
+     * @return false if rendering failed, so the widgets should be treated as still due
+     */
+    static boolean updateAppWidgets(Context context, AppWidgetManager appWidgetManager, WidgetConfig config,
+                                 int sizeBucket, int regionBucket, int[] appWidgetIds, int[] generations) {
+        Bitmap textBitmap = null;
         try {
-            DateTimeFormat format = getWidgetFormat(context, appWidgetId);
-            BoxDesignStyle boxStyle = getWidgetBoxStyle(context, appWidgetId);
-            GradientStyle gradient = getWidgetGradient(context, appWidgetId);
-            FontStyle font = getWidgetFont(context, appWidgetId);
-            String formattedText = formatDateTime(format);
+            boolean hostClock = usesHostClock(config);
+            boolean isDarkMode = isDarkMode(context);
+            // A TextClock's content is its pattern; the host renders the actual time
+            String text = hostClock ? config.getPattern() : formatDateTime(config.getPattern());
+            int wallpaperKey = config.getGradient().isAdaptive() ? WallpaperPaletteCache.getWallpaperKey(context) : 0;
+            RenderStateCache.Fingerprint fingerprint = new RenderStateCache.Fingerprint(config, isDarkMode, sizeBucket,
+                wallpaperKey, regionBucket, text);
+
+            int textCount = 0;
+            int fullCount = 0;
+            int[] textIds = new int[appWidgetIds.length];
+            int[] textGenerations = new int[appWidgetIds.length];
+            int[] fullIds = new int[appWidgetIds.length];
+            int[] fullGenerations = new int[appWidgetIds.length];
+            for (int i = 0; i < appWidgetIds.length; i++) {
+                int appWidgetId = appWidgetIds[i];
+                if (!RenderGenerations.isCurrent(appWidgetId, generations[i])) {
+                    Log.d(TAG, "Dropped superseded render of widget " + appWidgetId);
+                    continue;
+                }
+                int change = RenderStateCache.update(appWidgetId, fingerprint);
+                if (change == RenderStateCache.TEXT_CHANGED) {
+                    textIds[textCount] = appWidgetId;
+                    textGenerations[textCount++] = generations[i];
+                } else if (change == RenderStateCache.FULL) {
+                    fullIds[fullCount] = appWidgetId;
+                    fullGenerations[fullCount++] = generations[i];
+                }
+            }
 
-            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_layout_enhanced);
-            views.setTextViewText(R.id.dayText, formattedText);
+            int[] colors = null;
+            int textColor = getTextColor(isDarkMode);
+            if (textCount + fullCount > 0) {
+                // Resolved once per group; adaptive colors come from the wallpaper
+                if (config.getGradient().isAdaptive()) {
+                    // The style already picked a text color readable on both of its stops
+                    AdaptiveGradientStyle adaptive = WallpaperColorExtractor.createAdaptiveGradient(context,
+                        regionBucket);
+                    colors = new int[] {adaptive.getStartColor(), adaptive.getEndColor()};
+                    textColor = adaptive.getTextColor();
+                } else {
+                    colors = BackgroundRenderer.resolveColors(config.getGradient());
+                }
+                if (!hostClock) {
+                    textBitmap = renderText(context, config, text, textColor, sizeBucket);
+                }
+            }
 
-            // Apply gradient background
-            applyGradientBackground(context, views, gradient, boxStyle);
-            
-            // Apply font styling
-            applyFontStyling(views, font);
-            
-            // Apply dark mode detection
-            applyDarkModeAdaptation(context, views);
-
-            // Add click listener to open configuration
-            Intent configIntent = new Intent(context, WidgetConfigActivity.class);
-            configIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
-            configIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            PendingIntent pendingIntent = PendingIntent.getActivity(context, appWidgetId, 
-                configIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            views.setOnClickPendingIntent(R.id.dayText, pendingIntent);
-
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            if (textCount > 0) {
+                // The click intent set by the last full update stays in place
+                RemoteViews textOnly = new RemoteViews(context.getPackageName(), R.layout.widget_layout_enhanced);
+                applyText(textOnly, text, textBitmap);
+                int[] liveIds = dropSuperseded(textIds, textGenerations, textCount, fingerprint);
+                if (liveIds.length > 0) {
+                    appWidgetManager.partiallyUpdateAppWidget(liveIds, textOnly);
+                    Log.d(TAG, "Partial update of " + liveIds.length + " widgets ("
+                        + RenderStateCache.getStats() + ")");
+                }
+            }
+
+            Bitmap background = null;
+            if (fullCount > 0 && !supportsTintedBackground(config.getBoxStyle())) {
+                background = renderBackground(context, config, colors, sizeBucket);
+            }
+            RemoteViews shared = fullCount > 0
+                ? buildViews(context, config, text, textColor, colors, background, textBitmap) : null;
+            for (int i = 0; i < fullCount; i++) {
+                int appWidgetId = fullIds[i];
+                RemoteViews views = copyViews(shared);
+
+                // Add click listener to open configuration; the clickable content layout covers the
+                // whole widget and takes every tap, so the intent goes on it
+                Intent configIntent = new Intent(context, WidgetConfigActivity.class);
+                configIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+                configIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                PendingIntent pendingIntent = PendingIntent.getActivity(context, appWidgetId,
+                    configIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+                views.setOnClickPendingIntent(R.id.widgetContent, pendingIntent);
+
+                if (isSuperseded(appWidgetId, fullGenerations[i], fingerprint)) {
+                    continue;
+                }
+                appWidgetManager.updateAppWidget(appWidgetId, views);
+                Log.d(TAG, "Full update of widget " + appWidgetId + " (" + RenderStateCache.getStats() + ")");
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    logPayloadSize(views, background);
+                }
+            }
+            return true;
         } catch (Exception e) {
-            Log.e(TAG, "Error updating widget " + appWidgetId, e);
-            // Fallback to default display
-            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_layout_enhanced);
-            views.setTextViewText(R.id.dayText, "Error");
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            Log.e(TAG, "Error updating widgets " + Arrays.toString(appWidgetIds), e);
+            int live = 0;
+            int[] liveIds = new int[appWidgetIds.length];
+            for (int i = 0; i < appWidgetIds.length; i++) {
+                RenderStateCache.forget(appWidgetIds[i]);
+                if (RenderGenerations.isCurrent(appWidgetIds[i], generations[i])) {
+                    liveIds[live++] = appWidgetIds[i];
+                }
+            }
+            // Fallback to default display; the push itself may fail too, e.g. with a dead host
+            try {
+                RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_layout_enhanced);
+                applyText(views, "Error", null);
+                appWidgetManager.updateAppWidget(Arrays.copyOf(liveIds, live), views);
+            } catch (Exception fallbackError) {
+                Log.e(TAG, "Error pushing fallback views", fallbackError);
+            }
+            return false;
+        } finally {
+            // Composed time text is per call; the host has its own copy once the push returns
+            if (textBitmap != null && config.needsFrequentUpdates()) {
+                BitmapPool.release(textBitmap);
+            }
         }
     }
 
-    private static String formatDateTime(DateTimeFormat format) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat(format.getPattern(), Locale.getDefault());
-            return sdf.format(new Date());
-        } catch (Exception e) {
-            Log.e(TAG, "Error formatting date", e);
-            return "Error";
+    /**
+     * A copy of the group's views to which one widget's click intent can be added.
+     */
+    @SuppressWarnings("deprecation")
+    private static RemoteViews copyViews(RemoteViews views) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? new RemoteViews(views) : views.clone();
+    }
+
+    /**
+     * Everything in a full render except the per-widget click intent.
+     */
+    private static RemoteViews buildViews(Context context, WidgetConfig config, String text, int textColor,
+                                          int[] colors, Bitmap background, Bitmap textBitmap) {
+        RemoteViews views;
+        if (usesHostClock(config)) {
+            // The launcher ticks the TextClock, so no alarm or push is needed per minute
+            views = new RemoteViews(context.getPackageName(), R.layout.widget_layout_clock);
+            views.setCharSequence(R.id.dayText, "setFormat12Hour", text);
+            views.setCharSequence(R.id.dayText, "setFormat24Hour", text);
+        } else {
+            views = new RemoteViews(context.getPackageName(), R.layout.widget_layout_enhanced);
+            applyText(views, text, textBitmap);
+        }
+
+        // Apply gradient background
+        if (supportsTintedBackground(config.getBoxStyle())) {
+            applyTintedBackground(views, config.getGradient(), config.getBoxStyle(), colors);
+        } else {
+            applyGradientBackground(views, background);
         }
+
+        // Apply font styling
+        applyFontStyling(views, config.getFont());
+
+        // Apply text color
+        applyTextColor(views, textColor);
+        return views;
     }
 
-    private static DateTimeFormat getWidgetFormat(Context context, int appWidgetId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        int formatId = prefs.getInt(PREF_FORMAT_KEY + appWidgetId, DateTimeFormat.DAY_ONLY.getId());
-        return DateTimeFormat.fromId(formatId);
+    /**
+     * Shows the text as a bitmap in the configured font when one was drawn, else in the
+     * TextView. Both views are always set because the host keeps the previous state.
+     */
+    private static void applyText(RemoteViews views, String text, Bitmap textBitmap) {
+        views.setTextViewText(R.id.dayText, text);
+        if (textBitmap != null) {
+            views.setImageViewBitmap(R.id.dayTextImage, textBitmap);
+            views.setContentDescription(R.id.dayTextImage, text);
+            views.setViewVisibility(R.id.dayTextImage, android.view.View.VISIBLE);
+            views.setViewVisibility(R.id.dayText, android.view.View.INVISIBLE);
+        } else {
+            views.setViewVisibility(R.id.dayTextImage, android.view.View.GONE);
+            views.setViewVisibility(R.id.dayText, android.view.View.VISIBLE);
+        }
     }
 
-    private static BoxDesignStyle getWidgetBoxStyle(Context context, int appWidgetId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        int boxId = prefs.getInt(PREF_BOX_KEY + appWidgetId, BoxDesignStyle.ROUNDED_CORNERS.getId());
-        return BoxDesignStyle.fromId(boxId);
+    /**
+     * The text in the configured font, sized like the TextView would be, or null if the font
+     * cannot be drawn yet.
+     */
+    private static Bitmap renderText(Context context, WidgetConfig config, String text, int textColor,
+                                     int sizeBucket) {
+        try {
+            int widthDp = (sizeBucket >>> 16) * SIZE_BUCKET_DP;
+            if (widthDp == 0) {
+                widthDp = WidgetSizeStyle.STANDARD.getWidth();
+            }
+            return TextRasterizer.render(context, text, config.getFont(), getTextSize(config.getFont()),
+                textColor, widthDp - 2 * CONTENT_PADDING_DP, config.needsFrequentUpdates());
+        } catch (Exception e) {
+            Log.e(TAG, "Error rendering text", e);
+            return null;
+        }
     }
 
-    static void saveWidgetFormat(Context context, int appWidgetId, DateTimeFormat format) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putInt(PREF_FORMAT_KEY + appWidgetId, format.getId()).apply();
+    /**
+     * Filters the first {@code count} widgets down to those whose render is still current.
+     */
+    private static int[] dropSuperseded(int[] appWidgetIds, int[] generations, int count,
+                                        RenderStateCache.Fingerprint fingerprint) {
+        int live = 0;
+        int[] liveIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (!isSuperseded(appWidgetIds[i], generations[i], fingerprint)) {
+                liveIds[live++] = appWidgetIds[i];
+            }
+        }
+        return live == count ? liveIds : Arrays.copyOf(liveIds, live);
     }
 
-    static void saveWidgetBoxStyle(Context context, int appWidgetId, BoxDesignStyle boxStyle) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putInt(PREF_BOX_KEY + appWidgetId, boxStyle.getId()).apply();
+    /**
+     * Last check before a push. A superseded render gives up its fingerprint so the newer
+     * render's comparison is not based on something the host never received.
+     */
+    private static boolean isSuperseded(int appWidgetId, int generation, RenderStateCache.Fingerprint fingerprint) {
+        if (RenderGenerations.isCurrent(appWidgetId, generation)) {
+            return false;
+        }
+        RenderStateCache.forget(appWidgetId, fingerprint);
+        Log.d(TAG, "Dropped superseded render of widget " + appWidgetId);
+        return true;
     }
 
-    static void saveWidgetGradient(Context context, int appWidgetId, GradientStyle gradient) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putInt(PREF_GRADIENT_KEY + appWidgetId, gradient.getId()).apply();
+    /**
+     * Whether this format is rendered by a host-side TextClock instead of alarm-driven pushes.
+     * The TextClock can only show the font its layout declares, so widgets in any other font
+     * are drawn as bitmaps on the minute alarm instead. Formats with pattern letters TextClock
+     * does not understand fall back to the alarm path too.
+     */
+    static boolean usesHostClock(WidgetConfig config) {
+        return config.isHostClockCompatible() && config.getFont() == HOST_CLOCK_FONT;
     }
 
-    static void saveWidgetFont(Context context, int appWidgetId, FontStyle font) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().putInt(PREF_FONT_KEY + appWidgetId, font.getId()).apply();
+    private static String formatDateTime(String pattern) {
+        try {
+            return DateFormatterCache.format(pattern, System.currentTimeMillis());
+        } catch (Exception e) {
+            Log.e(TAG, "Error formatting date", e);
+            return "Error";
+        }
     }
 
-    private static GradientStyle getWidgetGradient(Context context, int appWidgetId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        int gradientId = prefs.getInt(PREF_GRADIENT_KEY + appWidgetId, GradientStyle.PASTEL_PINK.getId());
-        return GradientStyle.fromId(gradientId);
+    /**
+     * Coarse widget size from the host's options, so renders that depend on size are
+     * pushed again after a resize.
+     */
+    static int getSizeBucket(AppWidgetManager appWidgetManager, int appWidgetId) {
+        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+        if (options == null) {
+            return 0;
+        }
+        int width = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH) / SIZE_BUCKET_DP;
+        int height = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT) / SIZE_BUCKET_DP;
+        return width << 16 | (height & 0xFFFF);
     }
 
-    private static FontStyle getWidgetFont(Context context, int appWidgetId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        int fontId = prefs.getInt(PREF_FONT_KEY + appWidgetId, FontStyle.DANCING_SCRIPT.getId());
-        return FontStyle.fromId(fontId);
+    private static boolean isDarkMode(Context context) {
+        try {
+            return WallpaperColorExtractor.isSystemInDarkMode(context);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading dark mode", e);
+            return false;
+        }
     }
 
-    private void scheduleNextUpdate(Context context, int appWidgetId) {
-        DateTimeFormat format = getWidgetFormat(context, appWidgetId);
-        
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(context, WeekDayWidgetSimple.class);
-        intent.setAction(ACTION_UPDATE_WIDGET);
-        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
-        
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, appWidgetId, intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    static void saveWidgetConfig(Context context, int appWidgetId, WidgetConfig config) {
+        WidgetConfigCache.put(context, appWidgetId, config);
+    }
 
-        // Cancel any existing alarm
-        alarmManager.cancel(pendingIntent);
+    /**
+     * Whether the background can be expressed with tints and an outline instead of pixels.
+     * Needs API 31 setters, and shapes other than a rounded rectangle still need a bitmap.
+     */
+    private static boolean supportsTintedBackground(BoxDesignStyle boxStyle) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+            && (boxStyle == BoxDesignStyle.ROUNDED_CORNERS
+                || boxStyle == BoxDesignStyle.SHARP_CORNERS
+                || boxStyle == BoxDesignStyle.PILL_SHAPE);
+    }
 
-        // Schedule next update based on format
-        long updateInterval;
-        if (format.needsFrequentUpdates()) {
-            // Update every minute for time formats
-            updateInterval = 60 * 1000;
-        } else {
-            // Update at midnight for date-only formats
-            Calendar calendar = Calendar.getInstance();
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-            calendar.set(Calendar.HOUR_OF_DAY, 0);
-            calendar.set(Calendar.MINUTE, 0);
-            calendar.set(Calendar.SECOND, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            
-            long nextMidnight = calendar.getTimeInMillis();
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC, nextMidnight, pendingIntent);
-            return;
+    /**
+     * Draws the gradient on the host as a base tinted with the end color under a fading
+     * overlay tinted with the start color, clipped to the corner radius. The payload is two
+     * colors, two resource ids and a radius.
+     */
+    private static void applyTintedBackground(RemoteViews views, GradientStyle gradient, BoxDesignStyle boxStyle,
+                                              int[] colors) {
+        try {
+            int angle = Math.floorMod(BackgroundRenderer.resolveAngle(gradient), 360);
+            views.setImageViewResource(R.id.gradientBackground, R.drawable.widget_background_solid);
+            views.setColorStateList(R.id.gradientBackground, "setImageTintList", ColorStateList.valueOf(colors[1]));
+            views.setImageViewResource(R.id.gradientOverlay, GRADIENT_OVERLAYS[angle / 45]);
+            views.setColorStateList(R.id.gradientOverlay, "setImageTintList", ColorStateList.valueOf(colors[0]));
+            views.setViewVisibility(R.id.gradientOverlay, android.view.View.VISIBLE);
+            views.setViewOutlinePreferredRadius(R.id.backgroundClip, boxStyle.getCornerRadius(),
+                TypedValue.COMPLEX_UNIT_DIP);
+            Log.d(TAG, "Applied tinted gradient: " + gradient.getName() + " in " + boxStyle.getName());
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying gradient", e);
         }
+    }
 
-        long nextUpdate = SystemClock.elapsedRealtime() + updateInterval;
-        alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME, nextUpdate, pendingIntent);
+    /**
+     * Rasterized background for shapes and API levels the tinted path cannot express, or
+     * null if it could not be drawn.
+     */
+    private static Bitmap renderBackground(Context context, WidgetConfig config, int[] colors, int sizeBucket) {
+        try {
+            int widthDp = (sizeBucket >>> 16) * SIZE_BUCKET_DP;
+            int heightDp = (sizeBucket & 0xFFFF) * SIZE_BUCKET_DP;
+            if (widthDp == 0 || heightDp == 0) {
+                // Host has not reported a size yet
+                widthDp = WidgetSizeStyle.STANDARD.getWidth();
+                heightDp = WidgetSizeStyle.STANDARD.getHeight();
+            }
+            return BackgroundRenderer.render(context, colors, BackgroundRenderer.resolveAngle(config.getGradient()),
+                config.getBoxStyle(), widthDp, heightDp);
+        } catch (Exception e) {
+            Log.e(TAG, "Error rendering gradient", e);
+            return null;
+        }
     }
 
-    private void cancelUpdate(Context context, int appWidgetId) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(context, WeekDayWidgetSimple.class);
-        intent.setAction(ACTION_UPDATE_WIDGET);
-        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
-        
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, appWidgetId, intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-        alarmManager.cancel(pendingIntent);
+    private static void applyGradientBackground(RemoteViews views, Bitmap background) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // The host reuses the inflated views, so undo a previous tinted background
+            views.setColorStateList(R.id.gradientBackground, "setImageTintList", null);
+            views.setViewVisibility(R.id.gradientOverlay, android.view.View.GONE);
+            views.setViewOutlinePreferredRadius(R.id.backgroundClip, 0f, TypedValue.COMPLEX_UNIT_DIP);
+        }
+        if (background != null) {
+            views.setImageViewBitmap(R.id.gradientBackground, background);
+        } else {
+            views.setImageViewResource(R.id.gradientBackground, R.drawable.pastel_gradient);
+        }
     }
 
-    private static void applyGradientBackground(Context context, RemoteViews views, GradientStyle gradient, BoxDesignStyle boxStyle) {
+    /**
+     * Logs how many bytes a full push carries. Large bitmaps may travel as a separate blob,
+     * so their pixel size is reported next to the parcel size.
+     */
+    private static void logPayloadSize(RemoteViews views, Bitmap background) {
+        Parcel parcel = Parcel.obtain();
         try {
-            // Create dynamic gradient drawable
-            int startColor = android.graphics.Color.parseColor(gradient.getStartColor());
-            int endColor = android.graphics.Color.parseColor(gradient.getEndColor());
-            
-            // For now, we'll use a simple approach - create a bitmap with the gradient
-            android.graphics.drawable.GradientDrawable gradientDrawable = new android.graphics.drawable.GradientDrawable(
-                android.graphics.drawable.GradientDrawable.Orientation.TOP_BOTTOM,
-                new int[]{startColor, endColor}
-            );
-            
-            // Apply corner radius based on box style
-            float cornerRadius = boxStyle.getCornerRadius();
-            gradientDrawable.setCornerRadius(cornerRadius);
-            
-            // Note: RemoteViews has limitations, so we'll log for now and use default background
-            Log.d("WeekDayWidget", "Applied gradient: " + gradient.getName() + " with corners: " + cornerRadius);
-            
-        } catch (Exception e) {
-            Log.e("WeekDayWidget", "Error applying gradient", e);
+            views.writeToParcel(parcel, 0);
+            if (background == null) {
+                Log.d(TAG, "Payload via tint path: parcel " + parcel.dataSize() + " bytes");
+            } else {
+                Log.d(TAG, "Payload via bitmap path: parcel " + parcel.dataSize() + " bytes, bitmap "
+                    + background.getByteCount() + " bytes");
+            }
+        } finally {
+            parcel.recycle();
         }
     }
 
     private static void applyFontStyling(RemoteViews views, FontStyle font) {
         try {
-            // Apply font size based on font style
-            float textSize = 18f; // Default size
-            if (font == FontStyle.ROBOTO || font == FontStyle.OPEN_SANS) {
-                textSize = 16f; // Smaller for sans-serif fonts
-            } else if (font == FontStyle.PLAYFAIR_DISPLAY || font == FontStyle.MERRIWEATHER) {
-                textSize = 20f; // Larger for display fonts
-            }
-            
+            float textSize = getTextSize(font);
             views.setTextViewTextSize(R.id.dayText, android.util.TypedValue.COMPLEX_UNIT_SP, textSize);
             Log.d("WeekDayWidget", "Applied font: " + font.getName() + " with size: " + textSize);
             
@@ -245,20 +459,27 @@ public class WeekDayWidgetSimple extends AppWidgetProvider {
         }
     }
 
-    private static void applyDarkModeAdaptation(Context context, RemoteViews views) {
+    /**
+     * Text size in sp for a font style.
+     */
+    private static float getTextSize(FontStyle font) {
+        float textSize = 18f; // Default size
+        if (font == FontStyle.ROBOTO || font == FontStyle.OPEN_SANS) {
+            textSize = 16f; // Smaller for sans-serif fonts
+        } else if (font == FontStyle.PLAYFAIR_DISPLAY || font == FontStyle.MERRIWEATHER) {
+            textSize = 20f; // Larger for display fonts
+        }
+        return textSize;
+    }
+
+    private static int getTextColor(boolean isDarkMode) {
+        return android.graphics.Color.parseColor(isDarkMode ? "#E0E0E0" : "#2C3E50");
+    }
+
+    private static void applyTextColor(RemoteViews views, int textColor) {
         try {
-            // Check if system is in dark mode
-            boolean isDarkMode = WallpaperColorExtractor.isSystemInDarkMode(context);
-            
-            if (isDarkMode) {
-                // Apply dark mode colors
-                views.setTextColor(R.id.dayText, android.graphics.Color.parseColor("#E0E0E0"));
-                Log.d("WeekDayWidget", "Applied dark mode styling");
-            } else {
-                // Apply light mode colors
-                views.setTextColor(R.id.dayText, android.graphics.Color.parseColor("#2C3E50"));
-                Log.d("WeekDayWidget", "Applied light mode styling");
-            }
+            views.setTextColor(R.id.dayText, textColor);
+            Log.d("WeekDayWidget", "Applied text color " + Integer.toHexString(textColor));
             
         } catch (Exception e) {
             Log.e("WeekDayWidget", "Error applying dark mode", e);
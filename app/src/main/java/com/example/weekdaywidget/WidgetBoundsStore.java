@@ -0,0 +1,100 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Rect;
+import android.util.DisplayMetrics;
+import android.util.SparseArray;
+
+/**
+ * Last known on-screen bounds of each widget. Hosts do not report widget positions, but a
+ * tap hands the widget's bounds to the activity it opens, so they are recorded from there.
+ * The bounds are reduced to a coarse region of the screen for wallpaper sampling.
+ */
+final class WidgetBoundsStore {
+    private static final String PREFS_NAME = "com.example.weekdaywidget.bounds";
+    // Region edges snap to eighths of the screen, so nearby positions share one sample
+    private static final int GRID = 8;
+    /** Region bucket of a widget whose position is unknown. */
+    static final int UNKNOWN_REGION = 0;
+
+    private static final SparseArray<Rect> bounds = new SparseArray<>();
+    private static SharedPreferences prefs;
+
+    private WidgetBoundsStore() {}
+
+    /**
+     * Records a widget's bounds in screen pixels.
+     */
+    static synchronized void put(Context context, int appWidgetId, Rect sourceBounds) {
+        ensureLoaded(context);
+        bounds.put(appWidgetId, sourceBounds);
+        prefs.edit().putString(String.valueOf(appWidgetId), sourceBounds.flattenToString()).apply();
+    }
+
+    static synchronized void remove(Context context, int[] appWidgetIds) {
+        ensureLoaded(context);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int appWidgetId : appWidgetIds) {
+            bounds.delete(appWidgetId);
+            editor.remove(String.valueOf(appWidgetId));
+        }
+        editor.apply();
+    }
+
+    /**
+     * The widget's screen region snapped to the grid and packed as left, top, right and bottom
+     * grid lines, or {@link #UNKNOWN_REGION}.
+     */
+    static synchronized int getRegionBucket(Context context, int appWidgetId) {
+        ensureLoaded(context);
+        Rect rect = bounds.get(appWidgetId);
+        if (rect == null || rect.isEmpty()) {
+            return UNKNOWN_REGION;
+        }
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int left = snap(rect.left, metrics.widthPixels, false);
+        int top = snap(rect.top, metrics.heightPixels, false);
+        int right = Math.max(snap(rect.right, metrics.widthPixels, true), left + 1);
+        int bottom = Math.max(snap(rect.bottom, metrics.heightPixels, true), top + 1);
+        return 1 << 16 | left << 12 | top << 8 | right << 4 | bottom;
+    }
+
+    /**
+     * The region as fractions of the screen: {left, top, right, bottom}.
+     */
+    static float[] getRegion(int regionBucket) {
+        return new float[] {
+            ((regionBucket >> 12) & 0xF) / (float) GRID,
+            ((regionBucket >> 8) & 0xF) / (float) GRID,
+            ((regionBucket >> 4) & 0xF) / (float) GRID,
+            (regionBucket & 0xF) / (float) GRID
+        };
+    }
+
+    private static int snap(int position, int screenSize, boolean roundUp) {
+        if (screenSize <= 0) {
+            return roundUp ? GRID : 0;
+        }
+        float cells = Math.max(0, Math.min(position, screenSize)) * (float) GRID / screenSize;
+        return roundUp ? (int) Math.ceil(cells) : (int) cells;
+    }
+
+    private static void ensureLoaded(Context context) {
+        if (prefs != null) {
+            return;
+        }
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (String key : prefs.getAll().keySet()) {
+            Rect rect = Rect.unflattenFromString(prefs.getString(key, null));
+            if (rect == null) {
+                continue;
+            }
+            try {
+                bounds.put(Integer.parseInt(key), rect);
+            } catch (NumberFormatException e) {
+                // Not a widget entry
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.weekdaywidget;
+
+/**
+ * Immutable per-widget configuration. The four style ids are packed into a single int,
+ * one byte each: format | box << 8 | gradient << 16 | font << 24. Widgets using
+ * {@link DateTimeFormat#CUSTOM} also carry their own pattern.
+ */
+final class WidgetConfig {
+    static final WidgetConfig DEFAULT = new WidgetConfig(DateTimeFormat.DAY_ONLY,
+        BoxDesignStyle.ROUNDED_CORNERS, GradientStyle.PASTEL_PINK, FontStyle.DANCING_SCRIPT);
+
+    private final int packed;
+    private final DateTimeFormat format;
+    private final BoxDesignStyle boxStyle;
+    private final GradientStyle gradient;
+    private final FontStyle font;
+    private final String customPattern;
+    private final String pattern;
+    private final boolean needsFrequentUpdates;
+    private final boolean hostClockCompatible;
+
+    WidgetConfig(DateTimeFormat format, BoxDesignStyle boxStyle, GradientStyle gradient, FontStyle font) {
+        this(format, boxStyle, gradient, font, null);
+    }
+
+    WidgetConfig(DateTimeFormat format, BoxDesignStyle boxStyle, GradientStyle gradient, FontStyle font,
+                 String customPattern) {
+        this.format = format;
+        this.boxStyle = boxStyle;
+        this.gradient = gradient;
+        this.font = font;
+        this.packed = pack(format.getId(), boxStyle.getId(), gradient.getId(), font.getId());
+
+        if (format == DateTimeFormat.CUSTOM) {
+            // A custom widget whose pattern was lost shows the default format instead of nothing
+            this.customPattern = customPattern;
+            this.pattern = customPattern != null && !customPattern.isEmpty()
+                ? customPattern : DateTimeFormat.DAY_ONLY.getPattern();
+            this.needsFrequentUpdates = CompiledDatePattern.hasTimeFields(pattern);
+            this.hostClockCompatible = needsFrequentUpdates && DateTimeFormat.isHostClockCompatible(pattern);
+        } else {
+            this.customPattern = null;
+            this.pattern = format.getPattern();
+            this.needsFrequentUpdates = format.needsFrequentUpdates();
+            this.hostClockCompatible = format.isHostClockCompatible();
+        }
+    }
+
+    static WidgetConfig fromPacked(int packed, String customPattern) {
+        return new WidgetConfig(
+            DateTimeFormat.fromId(packed & 0xFF),
+            BoxDesignStyle.fromId((packed >>> 8) & 0xFF),
+            GradientStyle.fromId((packed >>> 16) & 0xFF),
+            FontStyle.fromId((packed >>> 24) & 0xFF),
+            customPattern);
+    }
+
+    static int pack(int formatId, int boxId, int gradientId, int fontId) {
+        return (formatId & 0xFF)
+            | (boxId & 0xFF) << 8
+            | (gradientId & 0xFF) << 16
+            | (fontId & 0xFF) << 24;
+    }
+
+    int getPacked() { return packed; }
+    DateTimeFormat getFormat() { return format; }
+    BoxDesignStyle getBoxStyle() { return boxStyle; }
+    GradientStyle getGradient() { return gradient; }
+    FontStyle getFont() { return font; }
+    String getCustomPattern() { return customPattern; }
+
+    /**
+     * The pattern actually rendered: the custom pattern for CUSTOM, else the format's own.
+     */
+    String getPattern() { return pattern; }
+    boolean needsFrequentUpdates() { return needsFrequentUpdates; }
+    boolean isHostClockCompatible() { return hostClockCompatible; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof WidgetConfig)) {
+            return false;
+        }
+        WidgetConfig other = (WidgetConfig) o;
+        return other.packed == packed
+            && (customPattern == null ? other.customPattern == null : customPattern.equals(other.customPattern));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * packed + (customPattern == null ? 0 : customPattern.hashCode());
+    }
+}
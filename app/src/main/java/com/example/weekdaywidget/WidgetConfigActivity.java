@@ -1,20 +1,23 @@
 package com.example.weekdaywidget;
 
 import android.appwidget.AppWidgetManager;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -30,6 +33,7 @@ public class WidgetConfigActivity extends AppCompatActivity {
     private BoxDesignStyle selectedBoxStyle = BoxDesignStyle.ROUNDED_CORNERS;
     private GradientStyle selectedGradient = GradientStyle.PASTEL_PINK;
     private FontStyle selectedFont = FontStyle.DANCING_SCRIPT;
+    private String selectedCustomPattern;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,6 +56,11 @@ public class WidgetConfigActivity extends AppCompatActivity {
             return;
         }
 
+        // Opened by a tap on the widget: the host passes where the widget is on screen
+        if (intent.getSourceBounds() != null) {
+            WidgetBoundsStore.put(this, appWidgetId, intent.getSourceBounds());
+        }
+
         initViews();
         setupFormatList();
         setupBoxStyleList();
@@ -84,11 +93,13 @@ public class WidgetConfigActivity extends AppCompatActivity {
         formatListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                selectedFormat = formatItems.get(position).format;
-                // Update selection visual feedback
-                for (int i = 0; i < parent.getChildCount(); i++) {
-                    parent.getChildAt(i).setSelected(i == position);
+                DateTimeFormat format = formatItems.get(position).format;
+                if (format == DateTimeFormat.CUSTOM) {
+                    showCustomPatternDialog(parent, formatItems, position, adapter);
+                } else {
+                    selectedFormat = format;
                 }
+                highlightFormat(parent, position);
             }
         });
         
@@ -181,10 +192,77 @@ public class WidgetConfigActivity extends AppCompatActivity {
         });
     }
 
+    // Update selection visual feedback
+    private static void highlightFormat(AdapterView<?> parent, int position) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            parent.getChildAt(i).setSelected(i == position);
+        }
+    }
+
+    private void showCustomPatternDialog(AdapterView<?> parent, List<FormatItem> formatItems, int position,
+                                         FormatAdapter adapter) {
+        EditText input = new EditText(this);
+        input.setSingleLine(true);
+        input.setHint(getString(R.string.custom_pattern_hint));
+        if (selectedCustomPattern != null) {
+            input.setText(selectedCustomPattern);
+        }
+
+        boolean[] accepted = new boolean[1];
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.custom_pattern_title)
+            .setView(input)
+            .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                String pattern = input.getText().toString().trim();
+                if (!isValidPattern(pattern)) {
+                    Toast.makeText(this, getString(R.string.custom_pattern_invalid), Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                accepted[0] = true;
+                selectedFormat = DateTimeFormat.CUSTOM;
+                selectedCustomPattern = pattern;
+                formatItems.set(position, new FormatItem(DateTimeFormat.CUSTOM,
+                    getFormatDescription(DateTimeFormat.CUSTOM), getPreviewText(pattern)));
+                adapter.notifyDataSetChanged();
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .setOnDismissListener(dialog -> {
+                if (accepted[0]) {
+                    return;
+                }
+                // The previous format is still in effect, so highlight it again
+                for (int i = 0; i < formatItems.size(); i++) {
+                    if (formatItems.get(i).format == selectedFormat) {
+                        highlightFormat(parent, i);
+                        break;
+                    }
+                }
+            })
+            .show();
+    }
+
+    private static boolean isValidPattern(String pattern) {
+        if (pattern.isEmpty()) {
+            return false;
+        }
+        try {
+            new SimpleDateFormat(pattern, Locale.getDefault());
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private String getPreviewText(DateTimeFormat format) {
+        if (format == DateTimeFormat.CUSTOM) {
+            return getString(R.string.custom_pattern_hint);
+        }
+        return getPreviewText(format.getPattern());
+    }
+
+    private String getPreviewText(String pattern) {
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat(format.getPattern(), Locale.getDefault());
-            return sdf.format(new Date());
+            return DateFormatterCache.format(pattern, System.currentTimeMillis());
         } catch (Exception e) {
             return "Preview Error";
         }
@@ -203,20 +281,22 @@ public class WidgetConfigActivity extends AppCompatActivity {
             case DAY_TIME_12H: return getString(R.string.format_day_time_12h);
             case DAY_TIME_24H: return getString(R.string.format_day_time_24h);
             case FULL_DATETIME: return getString(R.string.format_full_datetime);
+            case CUSTOM: return getString(R.string.format_custom);
             default: return "Unknown Format";
         }
     }
 
     private void saveConfiguration() {
-        // Save all selected options
-        WeekDayWidgetSimple.saveWidgetFormat(this, appWidgetId, selectedFormat);
-        WeekDayWidgetSimple.saveWidgetBoxStyle(this, appWidgetId, selectedBoxStyle);
-        WeekDayWidgetSimple.saveWidgetGradient(this, appWidgetId, selectedGradient);
-        WeekDayWidgetSimple.saveWidgetFont(this, appWidgetId, selectedFont);
-
-        // Update the widget
-        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        WeekDayWidgetSimple.updateAppWidget(this, appWidgetManager, appWidgetId);
+        WidgetConfig config = new WidgetConfig(selectedFormat, selectedBoxStyle, selectedGradient, selectedFont,
+            selectedFormat == DateTimeFormat.CUSTOM ? selectedCustomPattern : null);
+        Context context = getApplicationContext();
+        int widgetId = appWidgetId;
+
+        // Save all selected options in one write and update the widget without blocking the exit
+        WidgetRenderExecutor.execute(() -> {
+            WeekDayWidgetSimple.saveWidgetConfig(context, widgetId, config);
+            WidgetUpdateQueue.request(context, new int[] {widgetId}, null);
+        });
 
         // Return success result
         Intent resultValue = new Intent();
@@ -0,0 +1,85 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+/**
+ * Process-wide cache of {@link WidgetConfig} by appWidgetId. The binary store is parsed once
+ * per process; after that the render path only does a SparseArray lookup. Changes apply in
+ * memory at once and reach the file from a background thread, so neither the caller nor
+ * concurrent readers wait on disk.
+ */
+final class WidgetConfigCache {
+    private static final SparseArray<WidgetConfig> configs = new SparseArray<>();
+    // Records as last changed, null until the store has been read
+    private static WidgetConfigStore.Records records;
+    // Newest records not yet handed to a write
+    private static WidgetConfigStore.Records pendingWrite;
+    private static final Object writeLock = new Object();
+
+    private WidgetConfigCache() {}
+
+    static synchronized WidgetConfig get(Context context, int appWidgetId) {
+        WidgetConfig config = configs.get(appWidgetId);
+        if (config == null) {
+            ensureLoaded(context);
+            int packed = records.packed.get(appWidgetId, WidgetConfig.DEFAULT.getPacked());
+            config = packed == WidgetConfig.DEFAULT.getPacked()
+                ? WidgetConfig.DEFAULT : WidgetConfig.fromPacked(packed, records.patterns.get(appWidgetId));
+            configs.put(appWidgetId, config);
+        }
+        return config;
+    }
+
+    /**
+     * Stores the complete config of one widget with a single file write.
+     */
+    static synchronized void put(Context context, int appWidgetId, WidgetConfig config) {
+        ensureLoaded(context);
+        configs.put(appWidgetId, config);
+        records.packed.put(appWidgetId, config.getPacked());
+        if (config.getCustomPattern() != null) {
+            records.patterns.put(appWidgetId, config.getCustomPattern());
+        } else {
+            records.patterns.delete(appWidgetId);
+        }
+        scheduleWrite(context);
+    }
+
+    static synchronized void remove(Context context, int[] appWidgetIds) {
+        ensureLoaded(context);
+        for (int appWidgetId : appWidgetIds) {
+            configs.delete(appWidgetId);
+            records.packed.delete(appWidgetId);
+            records.patterns.delete(appWidgetId);
+        }
+        scheduleWrite(context);
+    }
+
+    /**
+     * Queues a write of a snapshot of the current records. Called with the cache lock held.
+     */
+    private static void scheduleWrite(Context context) {
+        pendingWrite = records.copy();
+        Context appContext = context.getApplicationContext();
+        WidgetRenderExecutor.execute(() -> {
+            // One write at a time, always of the newest snapshot; later tasks may find nothing left
+            synchronized (writeLock) {
+                WidgetConfigStore.Records snapshot;
+                synchronized (WidgetConfigCache.class) {
+                    snapshot = pendingWrite;
+                    pendingWrite = null;
+                }
+                if (snapshot != null) {
+                    WidgetConfigStore.write(appContext, snapshot);
+                }
+            }
+        });
+    }
+
+    private static void ensureLoaded(Context context) {
+        if (records == null) {
+            records = WidgetConfigStore.read(context);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.weekdaywidget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Small versioned binary file holding one fixed-size record per widget:
+ * header (magic, version, count) followed by (appWidgetId, packed config) int pairs.
+ * Version 2 appends a section of (appWidgetId, length, UTF-8 bytes) custom patterns.
+ * Every write replaces the whole file through a temp file and an atomic rename.
+ */
+final class WidgetConfigStore {
+    private static final String TAG = "WidgetConfigStore";
+    private static final String FILE_NAME = "widget_configs.bin";
+    private static final int MAGIC = 0x57444743; // "WDGC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 8;
+
+    // Legacy per-key preferences, migrated into the binary file on first read
+    private static final String LEGACY_PREFS_NAME = "com.example.weekdaywidget.preferences";
+    private static final String LEGACY_FORMAT_KEY = "format_";
+    private static final String LEGACY_BOX_KEY = "box_";
+    private static final String LEGACY_GRADIENT_KEY = "gradient_";
+    private static final String LEGACY_FONT_KEY = "font_";
+    // Set once the binary file holds the legacy configs, so they are never read again
+    private static final String LEGACY_MIGRATED_KEY = "migrated_to_file";
+
+    private WidgetConfigStore() {}
+
+    static final class Records {
+        final SparseIntArray packed = new SparseIntArray();
+        final SparseArray<String> patterns = new SparseArray<>();
+
+        Records copy() {
+            Records copy = new Records();
+            for (int i = 0; i < packed.size(); i++) {
+                copy.packed.put(packed.keyAt(i), packed.valueAt(i));
+            }
+            for (int i = 0; i < patterns.size(); i++) {
+                copy.patterns.put(patterns.keyAt(i), patterns.valueAt(i));
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Reads every stored record, keyed by appWidgetId. Returns empty records if the file is
+     * missing or unreadable.
+     */
+    static Records read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return migrateLegacyPreferences(context);
+        }
+
+        Records records = new Records();
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = input.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, offset);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                Log.w(TAG, "Ignoring config file with bad header");
+                return records;
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                Log.w(TAG, "Ignoring config file with unknown version " + version);
+                return records;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count && buffer.remaining() >= RECORD_SIZE; i++) {
+                int appWidgetId = buffer.getInt();
+                records.packed.put(appWidgetId, buffer.getInt());
+            }
+            if (version >= 2 && buffer.remaining() >= 4) {
+                int patternCount = buffer.getInt();
+                for (int i = 0; i < patternCount && buffer.remaining() >= RECORD_SIZE; i++) {
+                    int appWidgetId = buffer.getInt();
+                    int length = buffer.getInt();
+                    if (length < 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    records.patterns.put(appWidgetId,
+                        new String(bytes, buffer.position(), length, StandardCharsets.UTF_8));
+                    buffer.position(buffer.position() + length);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading widget configs", e);
+        }
+        return records;
+    }
+
+    /**
+     * Replaces the stored records with the given ones in a single atomic write.
+     */
+    static boolean write(Context context, Records records) {
+        int count = records.packed.size();
+        int patternCount = records.patterns.size();
+        byte[][] patternBytes = new byte[patternCount][];
+        int patternSize = 4;
+        for (int i = 0; i < patternCount; i++) {
+            patternBytes[i] = records.patterns.valueAt(i).getBytes(StandardCharsets.UTF_8);
+            patternSize += RECORD_SIZE + patternBytes[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE + patternSize);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(records.packed.keyAt(i)).putInt(records.packed.valueAt(i));
+        }
+        buffer.putInt(patternCount);
+        for (int i = 0; i < patternCount; i++) {
+            buffer.putInt(records.patterns.keyAt(i)).putInt(patternBytes[i].length).put(patternBytes[i]);
+        }
+
+        File file = getFile(context);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(buffer.array(), 0, buffer.position());
+            output.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing widget configs", e);
+            temp.delete();
+            return false;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Error replacing widget config file");
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the legacy preferences into the binary file. They are cleared only after the file
+     * has been renamed into place, so a failed write leaves them for the next start to retry.
+     */
+    private static Records migrateLegacyPreferences(Context context) {
+        Records records = new Records();
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        if (prefs.getBoolean(LEGACY_MIGRATED_KEY, false)) {
+            return records;
+        }
+        Map<String, ?> entries = prefs.getAll();
+        if (entries.isEmpty()) {
+            prefs.edit().putBoolean(LEGACY_MIGRATED_KEY, true).apply();
+            return records;
+        }
+
+        for (String key : entries.keySet()) {
+            if (key.startsWith(LEGACY_FORMAT_KEY)) {
+                int appWidgetId;
+                try {
+                    appWidgetId = Integer.parseInt(key.substring(LEGACY_FORMAT_KEY.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                records.packed.put(appWidgetId, WidgetConfig.pack(
+                    prefs.getInt(LEGACY_FORMAT_KEY + appWidgetId, DateTimeFormat.DAY_ONLY.getId()),
+                    prefs.getInt(LEGACY_BOX_KEY + appWidgetId, BoxDesignStyle.ROUNDED_CORNERS.getId()),
+                    prefs.getInt(LEGACY_GRADIENT_KEY + appWidgetId, GradientStyle.PASTEL_PINK.getId()),
+                    prefs.getInt(LEGACY_FONT_KEY + appWidgetId, FontStyle.DANCING_SCRIPT.getId())));
+            }
+        }
+
+        if (write(context, records)) {
+            prefs.edit().clear().putBoolean(LEGACY_MIGRATED_KEY, true).commit();
+            Log.d(TAG, "Migrated " + records.packed.size() + " widget configs from preferences");
+        }
+        return records;
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.weekdaywidget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded pool that renders widgets off the main thread. A batch completes when every
+ * widget is pushed or the time budget runs out, whichever comes first, so receivers kept
+ * alive through {@link BroadcastReceiver#goAsync()} are always finished in time.
+ */
+final class WidgetRenderExecutor {
+    private static final String TAG = "WidgetRenderExecutor";
+    private static final int THREAD_COUNT = 3;
+    private static final long IDLE_TIMEOUT_SECONDS = 30L;
+    // Receivers are killed at 10s; finish early enough to leave room for rescheduling
+    static final long TIME_BUDGET_MILLIS = 8_000L;
+
+    interface BatchCallback {
+        /**
+         * Called once per batch with the widgets that were pushed within the budget. Widgets
+         * whose render failed are left out.
+         */
+        void onBatchRendered(int[] renderedIds);
+    }
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private WidgetRenderExecutor() {}
+
+    /**
+     * Runs a single task on the render pool, e.g. saving and rendering from the config screen.
+     */
+    static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Renders the given widgets, then calls back exactly once. Widgets sharing a config, size
+     * bucket and, for adaptive gradients, screen region form one group and are rendered
+     * together; groups run in parallel.
+     * Widgets still queued when the budget expires are rendered anyway but are not reported,
+     * so the scheduler treats them as due again.
+     */
+    static void render(Context context, int[] appWidgetIds, BatchCallback callback) {
+        Context appContext = context.getApplicationContext();
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(appContext);
+        BitmapPool.configure(appContext);
+        Batch batch = new Batch(appWidgetIds.length, callback);
+        if (appWidgetIds.length == 0) {
+            executor.execute(batch::finish);
+            return;
+        }
+
+        // Taken at request time so anything requested later supersedes this render
+        int[] generations = new int[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            generations[i] = RenderGenerations.next(appWidgetIds[i]);
+        }
+
+        mainHandler.postDelayed(batch.timeout, TIME_BUDGET_MILLIS);
+        executor.execute(() -> {
+            List<Group> groups = null;
+            int scheduled = 0;
+            try {
+                groups = groupByConfig(appContext, appWidgetManager, appWidgetIds, generations);
+                for (Group group : groups) {
+                    executor.execute(() -> renderGroup(appContext, appWidgetManager, group, batch));
+                    scheduled++;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error grouping widgets", e);
+            } finally {
+                // Widgets that never reached a render task were not pushed and stay due
+                if (groups == null) {
+                    batch.onDone(appWidgetIds, appWidgetIds.length, false);
+                } else {
+                    for (int i = scheduled; i < groups.size(); i++) {
+                        batch.onDone(groups.get(i).ids, groups.get(i).count, false);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void renderGroup(Context context, AppWidgetManager appWidgetManager, Group group, Batch batch) {
+        boolean pushed = false;
+        try {
+            pushed = WeekDayWidgetSimple.updateAppWidgets(context, appWidgetManager, group.config,
+                group.sizeBucket, group.regionBucket, Arrays.copyOf(group.ids, group.count),
+                Arrays.copyOf(group.generations, group.count));
+        } catch (Exception e) {
+            Log.e(TAG, "Error rendering widget group", e);
+        } finally {
+            batch.onDone(group.ids, group.count, pushed);
+        }
+    }
+
+    /**
+     * Widgets with identical rendered content apart from their click intent.
+     */
+    private static final class Group {
+        final WidgetConfig config;
+        final int sizeBucket;
+        final int regionBucket;
+        final int[] ids;
+        final int[] generations;
+        int count;
+
+        Group(WidgetConfig config, int sizeBucket, int regionBucket, int capacity) {
+            this.config = config;
+            this.sizeBucket = sizeBucket;
+            this.regionBucket = regionBucket;
+            this.ids = new int[capacity];
+            this.generations = new int[capacity];
+        }
+    }
+
+    private static List<Group> groupByConfig(Context context, AppWidgetManager appWidgetManager,
+                                             int[] appWidgetIds, int[] generations) {
+        // Distinct configs are few, so a linear scan beats hashing here
+        List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            WidgetConfig config = WidgetConfigCache.get(context, appWidgetIds[i]);
+            int sizeBucket = WeekDayWidgetSimple.getSizeBucket(appWidgetManager, appWidgetIds[i]);
+            // Only adaptive gradients depend on where the widget sits
+            int regionBucket = config.getGradient().isAdaptive()
+                ? WidgetBoundsStore.getRegionBucket(context, appWidgetIds[i]) : WidgetBoundsStore.UNKNOWN_REGION;
+            Group group = null;
+            for (Group candidate : groups) {
+                if (candidate.sizeBucket == sizeBucket && candidate.regionBucket == regionBucket
+                        && candidate.config.equals(config)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new Group(config, sizeBucket, regionBucket, appWidgetIds.length);
+                groups.add(group);
+            }
+            group.ids[group.count] = appWidgetIds[i];
+            group.generations[group.count++] = generations[i];
+        }
+        Log.d(TAG, "Grouped " + appWidgetIds.length + " widgets into " + groups.size() + " renders");
+        return groups;
+    }
+
+    private static final class Batch {
+        private final int[] rendered;
+        private final BatchCallback callback;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicInteger remaining;
+        private int renderedCount;
+
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                Log.w(TAG, "Render budget exceeded with " + remaining.get() + " widgets left");
+                finish();
+            }
+        };
+
+        Batch(int size, BatchCallback callback) {
+            this.rendered = new int[size];
+            this.remaining = new AtomicInteger(size);
+            this.callback = callback;
+        }
+
+        /**
+         * Marks widgets as handled; only pushed ones are reported to the callback.
+         */
+        void onDone(int[] appWidgetIds, int count, boolean pushed) {
+            if (pushed) {
+                synchronized (this) {
+                    System.arraycopy(appWidgetIds, 0, rendered, renderedCount, count);
+                    renderedCount += count;
+                }
+            }
+            if (remaining.addAndGet(-count) == 0) {
+                mainHandler.removeCallbacks(timeout);
+                finish();
+            }
+        }
+
+        void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                int[] renderedIds;
+                synchronized (this) {
+                    renderedIds = new int[renderedCount];
+                    System.arraycopy(rendered, 0, renderedIds, 0, renderedCount);
+                }
+                callback.onBatchRendered(renderedIds);
+            } catch (Exception e) {
+                Log.e(TAG, "Error completing render batch", e);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "widget-render-" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+            IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.weekdaywidget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Front door for every widget render. Requests arriving within a short window are merged:
+ * each widget is rendered once, all widgets go out in one batch, and the alarm is
+ * rescheduled once when the batch completes.
+ */
+final class WidgetUpdateQueue {
+    private static final String TAG = "WidgetUpdateQueue";
+    // Long enough to catch a launcher's burst of broadcasts, short enough to go unnoticed
+    static final long COALESCE_WINDOW_MILLIS = 150L;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    // Requested appWidgetIds, with how many requests each one received in this window
+    private static final SparseIntArray pending = new SparseIntArray();
+    private static final List<BroadcastReceiver.PendingResult> pendingResults = new ArrayList<>();
+    private static Context appContext;
+    private static boolean flushScheduled;
+
+    private static final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private WidgetUpdateQueue() {}
+
+    /**
+     * Queues the given widgets for rendering. A non-null pending result is finished once the
+     * batch containing these widgets has been pushed, or has run out of time.
+     */
+    static synchronized void request(Context context, int[] appWidgetIds,
+                                     BroadcastReceiver.PendingResult pendingResult) {
+        if (appContext == null) {
+            appContext = context.getApplicationContext();
+        }
+        for (int appWidgetId : appWidgetIds) {
+            pending.put(appWidgetId, pending.get(appWidgetId) + 1);
+        }
+        if (pendingResult != null) {
+            pendingResults.add(pendingResult);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, COALESCE_WINDOW_MILLIS);
+        }
+    }
+
+    private static void flush() {
+        Context context;
+        int[] appWidgetIds;
+        List<BroadcastReceiver.PendingResult> results;
+        int requestCount = 0;
+        synchronized (WidgetUpdateQueue.class) {
+            context = appContext;
+            appWidgetIds = new int[pending.size()];
+            for (int i = 0; i < appWidgetIds.length; i++) {
+                appWidgetIds[i] = pending.keyAt(i);
+                requestCount += pending.valueAt(i);
+            }
+            results = new ArrayList<>(pendingResults);
+            pending.clear();
+            pendingResults.clear();
+            flushScheduled = false;
+        }
+
+        Log.d(TAG, "Coalesced " + requestCount + " requests into " + appWidgetIds.length + " renders");
+        WidgetRenderExecutor.render(context, appWidgetIds, renderedIds -> {
+            try {
+                WidgetUpdateScheduler.markRendered(context, renderedIds);
+                WidgetUpdateScheduler.reschedule(context);
+            } finally {
+                for (BroadcastReceiver.PendingResult result : results) {
+                    result.finish();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.weekdaywidget;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import android.util.SparseLongArray;
+
+import java.util.Arrays;
+
+/**
+ * Keeps exactly one pending alarm for the earliest due update across all widget instances,
+ * and renders every due widget in a single pass when it fires.
+ */
+final class WidgetUpdateScheduler {
+    private static final String TAG = "WidgetUpdateScheduler";
+    static final String ACTION_UPDATE_WIDGET = "com.example.weekdaywidget.UPDATE_WIDGET";
+    private static final int ALARM_REQUEST_CODE = 0;
+
+    private static final UpdateClock clock = new UpdateClock(UpdateClock.SYSTEM);
+
+    // Next wall-clock due time per appWidgetId; widgets missing here are treated as due
+    private static final SparseLongArray dueTimes = new SparseLongArray();
+    // Trigger time of the currently armed alarm, 0 when nothing is known to be armed
+    private static long armedAt;
+
+    private WidgetUpdateScheduler() {}
+
+    /**
+     * Queues every widget whose due time has passed; the shared alarm is re-armed once
+     * the batch is done.
+     */
+    static void onTick(Context context, BroadcastReceiver.PendingResult pendingResult) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] allIds = getAllWidgetIds(context, appWidgetManager);
+        int[] dueIds = collectDue(allIds, clock.now());
+        synchronized (WidgetUpdateScheduler.class) {
+            // The alarm that delivered this tick has been consumed
+            armedAt = 0L;
+        }
+
+        Log.d(TAG, "Tick found " + dueIds.length + " of " + allIds.length + " widgets due");
+        WidgetUpdateQueue.request(context, dueIds, pendingResult);
+    }
+
+    /**
+     * Handles a clock, timezone, date or locale change: drops every computed due time,
+     * re-renders the affected widgets once and re-arms the alarm from scratch.
+     */
+    static void onTimeBaseChanged(Context context, boolean includeHostClock,
+                                  BroadcastReceiver.PendingResult pendingResult) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] allIds = getAllWidgetIds(context, appWidgetManager);
+        DateFormatterCache.invalidate();
+        if (includeHostClock) {
+            // Host-clock renders look unchanged by fingerprint but must be pushed again
+            RenderStateCache.clear();
+        }
+        synchronized (WidgetUpdateScheduler.class) {
+            // Absolute trigger times computed under the old clock or zone are no longer valid
+            dueTimes.clear();
+            armedAt = 0L;
+        }
+
+        int count = 0;
+        int[] affected = new int[allIds.length];
+        int[] hostClockIds = new int[allIds.length];
+        int hostClockCount = 0;
+        for (int appWidgetId : allIds) {
+            WidgetConfig config = WidgetConfigCache.get(context, appWidgetId);
+            if (includeHostClock || !WeekDayWidgetSimple.usesHostClock(config)) {
+                affected[count++] = appWidgetId;
+            } else {
+                hostClockIds[hostClockCount++] = appWidgetId;
+            }
+        }
+        // Widgets left to their TextClock are current as they are
+        markRendered(context, Arrays.copyOf(hostClockIds, hostClockCount));
+
+        Log.d(TAG, "Time base changed, re-rendering " + count + " of " + allIds.length + " widgets");
+        WidgetUpdateQueue.request(context, Arrays.copyOf(affected, count), pendingResult);
+    }
+
+    /**
+     * Handles a wallpaper change: drops the cached palette and re-renders the widgets with
+     * adaptive gradients. Their fingerprints carry the wallpaper key, so they are pushed in full.
+     * Runs on the render pool, since dropping the palette waits for any extraction in progress
+     * and deletes its file.
+     */
+    static void onWallpaperChanged(Context context, BroadcastReceiver.PendingResult pendingResult) {
+        Context appContext = context.getApplicationContext();
+        WidgetRenderExecutor.execute(() -> {
+            int[] affected = new int[0];
+            try {
+                WallpaperPaletteCache.invalidate(appContext);
+                int[] allIds = getAllWidgetIds(appContext, AppWidgetManager.getInstance(appContext));
+                int count = 0;
+                int[] adaptive = new int[allIds.length];
+                for (int appWidgetId : allIds) {
+                    if (WidgetConfigCache.get(appContext, appWidgetId).getGradient().isAdaptive()) {
+                        adaptive[count++] = appWidgetId;
+                    }
+                }
+                affected = Arrays.copyOf(adaptive, count);
+                Log.d(TAG, "Wallpaper changed, re-rendering " + count + " of " + allIds.length + " widgets");
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling wallpaper change", e);
+            } finally {
+                // Always queued, so the broadcast is finished
+                WidgetUpdateQueue.request(appContext, affected, pendingResult);
+            }
+        });
+    }
+
+    /**
+     * Handles the end of the startup font scan after a render had to go without a downloaded
+     * font: pushes the widgets in downloaded fonts again, now that their fonts can be drawn.
+     */
+    static void onFontsScanned(Context context) {
+        int[] allIds = getAllWidgetIds(context, AppWidgetManager.getInstance(context));
+        int count = 0;
+        int[] downloaded = new int[allIds.length];
+        for (int appWidgetId : allIds) {
+            if (!WidgetConfigCache.get(context, appWidgetId).getFont().isPreInstalled()) {
+                downloaded[count++] = appWidgetId;
+            }
+        }
+        int[] ids = Arrays.copyOf(downloaded, count);
+        // Their fingerprints match the fallback render, which would otherwise be kept
+        RenderStateCache.remove(ids);
+        Log.d(TAG, "Fonts scanned, re-rendering " + count + " of " + allIds.length + " widgets");
+        WidgetUpdateQueue.request(context, ids, null);
+    }
+
+    /**
+     * Records that the given widgets have just been rendered and computes their next due time.
+     */
+    static synchronized void markRendered(Context context, int[] appWidgetIds) {
+        long now = clock.now();
+        for (int appWidgetId : appWidgetIds) {
+            WidgetConfig config = WidgetConfigCache.get(context, appWidgetId);
+            dueTimes.put(appWidgetId, clock.nextFireTime(config, now));
+        }
+    }
+
+    static synchronized void remove(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            dueTimes.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * Arms the single shared alarm for the earliest due time among all live widgets,
+     * or cancels it when there are none.
+     */
+    static void reschedule(Context context) {
+        reschedule(context, getAllWidgetIds(context, AppWidgetManager.getInstance(context)));
+    }
+
+    static synchronized void reschedule(Context context, int[] allIds) {
+        long earliest = earliestDue(allIds);
+        if (earliest == armedAt) {
+            // The boundary did not move, the armed alarm is still correct
+            return;
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent pendingIntent = getAlarmIntent(context);
+        if (earliest == Long.MAX_VALUE) {
+            alarmManager.cancel(pendingIntent);
+        } else {
+            // Wall-clock alarm on the exact boundary; re-setting the same PendingIntent replaces it
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC, earliest, pendingIntent);
+        }
+        armedAt = earliest;
+    }
+
+    static void cancel(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(getAlarmIntent(context));
+        synchronized (WidgetUpdateScheduler.class) {
+            dueTimes.clear();
+            armedAt = 0L;
+        }
+    }
+
+    private static synchronized int[] collectDue(int[] allIds, long now) {
+        int count = 0;
+        int[] due = new int[allIds.length];
+        for (int appWidgetId : allIds) {
+            if (dueTimes.get(appWidgetId, 0L) <= now) {
+                due[count++] = appWidgetId;
+            }
+        }
+        if (count == due.length) {
+            return due;
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(due, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    private static synchronized long earliestDue(int[] allIds) {
+        long earliest = Long.MAX_VALUE;
+        for (int appWidgetId : allIds) {
+            // Unknown widgets (e.g. after process death) get picked up on the next minute;
+            // host-clock widgets are stored as Long.MAX_VALUE and never arm the alarm
+            long due = dueTimes.get(appWidgetId, 0L);
+            if (due == 0L) {
+                due = clock.nextMinuteBoundary(clock.now());
+            }
+            earliest = Math.min(earliest, due);
+        }
+        return earliest;
+    }
+
+    private static int[] getAllWidgetIds(Context context, AppWidgetManager appWidgetManager) {
+        return appWidgetManager.getAppWidgetIds(new ComponentName(context, WeekDayWidgetSimple.class));
+    }
+
+    private static PendingIntent getAlarmIntent(Context context) {
+        Intent intent = new Intent(context, WeekDayWidgetSimple.class);
+        intent.setAction(ACTION_UPDATE_WIDGET);
+        return PendingIntent.getBroadcast(context, ALARM_REQUEST_CODE, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
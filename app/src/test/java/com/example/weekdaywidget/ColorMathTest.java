@@ -0,0 +1,67 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the WCAG luminance and contrast math and the text color choice built on it.
+ */
+public class ColorMathTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    @Test
+    public void luminanceTableMatchesFormula() {
+        for (int value = 0; value < 256; value++) {
+            // One channel at a time, so each weight is checked against the formula
+            assertEquals("red " + value, 0.2126 * linear(value), ColorMath.luminance(BLACK | value << 16), 1e-12);
+            assertEquals("green " + value, 0.7152 * linear(value), ColorMath.luminance(BLACK | value << 8), 1e-12);
+            assertEquals("blue " + value, 0.0722 * linear(value), ColorMath.luminance(BLACK | value), 1e-12);
+        }
+        assertEquals(1.0, ColorMath.luminance(WHITE), 1e-12);
+        assertEquals(0.0, ColorMath.luminance(BLACK), 1e-12);
+    }
+
+    @Test
+    public void contrastRunsFromOneToTwentyOne() {
+        assertEquals(21.0, ColorMath.contrast(WHITE, BLACK), 1e-9);
+        assertEquals(21.0, ColorMath.contrast(BLACK, WHITE), 1e-9);
+        assertEquals(1.0, ColorMath.contrast(0xFF6200EE, 0xFF6200EE), 1e-9);
+    }
+
+    @Test
+    public void keepsPreferredColorWhenReadableOnBothStops() {
+        int preferred = 0xFF2C3E50;
+        assertEquals(preferred, ColorMath.pickTextColor(0xFFFCE4EC, 0xFFF8BBD0, preferred));
+    }
+
+    @Test
+    public void fallsBackToWhiteOnDarkStops() {
+        // The dark preferred color is unreadable on a dark gradient
+        assertEquals(WHITE, ColorMath.pickTextColor(0xFF1A237E, 0xFF311B92, 0xFF2C3E50));
+    }
+
+    @Test
+    public void fallsBackToBlackOnLightStops() {
+        // The light preferred color is unreadable on a light gradient
+        assertEquals(BLACK, ColorMath.pickTextColor(0xFFFFF9C4, 0xFFFFECB3, 0xFFE0E0E0));
+    }
+
+    @Test
+    public void mixedStopsGetTheBetterWorstCase() {
+        int light = 0xFFEEEEEE;
+        int dark = 0xFF222222;
+        int picked = ColorMath.pickTextColor(light, dark, 0xFF808080);
+        assertEquals(BLACK, picked);
+        // Neither black nor white reaches the minimum against both of these stops
+        double worst = Math.min(ColorMath.contrast(picked, light), ColorMath.contrast(picked, dark));
+        assertTrue(worst < ColorMath.MIN_TEXT_CONTRAST);
+    }
+
+    private static double linear(int value) {
+        double c = value / 255.0;
+        return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+}
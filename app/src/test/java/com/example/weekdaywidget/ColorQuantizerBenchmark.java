@@ -0,0 +1,45 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Times the quantizer against Palette on every fixture and prints the mean time per call.
+ * Palette runs on Robolectric's bitmaps here, so compare the numbers, not their absolute size.
+ * Kept out of the default test run; remove the {@code @Ignore} and run {@code ./gradlew
+ * testDebugUnitTest --tests '*ColorQuantizerBenchmark'} to measure.
+ */
+@Ignore("Benchmark, run by hand")
+@RunWith(RobolectricTestRunner.class)
+public class ColorQuantizerBenchmark {
+    private static final int WARMUP_RUNS = 50;
+    private static final int MEASURED_RUNS = 200;
+
+    @Test
+    public void quantizerVersusPalette() {
+        for (int i = 0; i < QuantizerFixtures.NAMES.length; i++) {
+            int[] pixels = QuantizerFixtures.get(i);
+            long quantizerNanos = time(() -> ColorQuantizer.quantize(pixels, pixels.length, 0));
+            long paletteNanos = time(() -> ColorQuantizerTest.fromPalette(pixels));
+            System.out.printf("%-18s quantizer %7.1f us, Palette %7.1f us%n", QuantizerFixtures.NAMES[i],
+                quantizerNanos / 1000.0, paletteNanos / 1000.0);
+        }
+        // Keeps the loop from being optimized away
+        assertEquals(3, ColorQuantizer.quantize(QuantizerFixtures.get(0), 1, 0).length);
+    }
+
+    private static long time(Runnable run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            run.run();
+        }
+        return (System.nanoTime() - start) / MEASURED_RUNS;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+
+import androidx.palette.graphics.Palette;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Checks that the quantizer picks exactly the colors the widget used to get from Palette.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ColorQuantizerTest {
+    private static final int DEFAULT_COLOR = 0xFF6200EE;
+
+    @Test
+    public void matchesPaletteOnFixtures() {
+        for (int i = 0; i < QuantizerFixtures.NAMES.length; i++) {
+            int[] pixels = QuantizerFixtures.get(i);
+            int[] expected = fromPalette(pixels);
+            int[] actual = ColorQuantizer.quantize(pixels, pixels.length, DEFAULT_COLOR);
+            String name = QuantizerFixtures.NAMES[i];
+            assertEquals(name + " dominant", hex(expected[0]), hex(actual[0]));
+            assertEquals(name + " vibrant", hex(expected[1]), hex(actual[1]));
+            assertEquals(name + " muted", hex(expected[2]), hex(actual[2]));
+        }
+    }
+
+    @Test
+    public void fallsBackToDefaultWhenEverythingIsFiltered() {
+        int[] pixels = QuantizerFixtures.get(QuantizerFixtures.NAMES.length - 1);
+        int[] colors = ColorQuantizer.quantize(pixels, pixels.length, DEFAULT_COLOR);
+        assertEquals(hex(DEFAULT_COLOR), hex(colors[0]));
+        assertEquals(hex(DEFAULT_COLOR), hex(colors[1]));
+        assertEquals(hex(DEFAULT_COLOR), hex(colors[2]));
+    }
+
+    /**
+     * The extraction the widget did before the quantizer replaced Palette.
+     */
+    static int[] fromPalette(int[] pixels) {
+        Bitmap bitmap = Bitmap.createBitmap(pixels, QuantizerFixtures.SIZE, QuantizerFixtures.SIZE,
+            Bitmap.Config.ARGB_8888);
+        Palette palette = Palette.from(bitmap).generate();
+        int dominant = palette.getDominantColor(DEFAULT_COLOR);
+        return new int[] {dominant, palette.getVibrantColor(dominant), palette.getMutedColor(dominant)};
+    }
+
+    private static String hex(int color) {
+        return String.format("#%08X", color);
+    }
+}
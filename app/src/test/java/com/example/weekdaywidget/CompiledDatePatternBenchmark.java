@@ -0,0 +1,84 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Times one minute tick of every built-in format, compiled versus SimpleDateFormat, over a
+ * day of ticks, and prints the mean time per tick. Kept out of the default test run; remove
+ * the {@code @Ignore} and run {@code ./gradlew testDebugUnitTest --tests
+ * '*CompiledDatePatternBenchmark'} to measure.
+ */
+@Ignore("Benchmark, run by hand")
+public class CompiledDatePatternBenchmark {
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 50;
+    private static final int TICKS_PER_DAY = 24 * 60;
+    private static final long MINUTE = 60_000L;
+    // 2024-01-01T00:00Z
+    private static final long START = 1_704_067_200_000L;
+
+    @Test
+    public void minuteTickVersusSimpleDateFormat() {
+        Locale locale = Locale.US;
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        for (DateTimeFormat format : DateTimeFormat.values()) {
+            String pattern = format.getPattern();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            CompiledDatePattern compiled = new CompiledDatePattern(pattern, locale, zone);
+            SimpleDateFormat cached = new SimpleDateFormat(pattern, locale);
+            cached.setTimeZone(zone);
+
+            long compiledNanos = time(time -> compiled.format(time));
+            long cachedNanos = time(time -> cached.format(new Date(time)));
+            // What each tick used to cost: a new formatter per render
+            long freshNanos = time(time -> {
+                SimpleDateFormat fresh = new SimpleDateFormat(pattern, locale);
+                fresh.setTimeZone(zone);
+                return fresh.format(new Date(time));
+            });
+            System.out.printf("%-14s compiled %6.2f us, SimpleDateFormat %6.2f us, new SimpleDateFormat %6.2f us%n",
+                format.name(), compiledNanos / 1000.0, cachedNanos / 1000.0, freshNanos / 1000.0);
+        }
+        // Keeps the loops from being optimized away
+        assertEquals(new SimpleDateFormat("HH:mm", locale).format(new Date(START)),
+            new CompiledDatePattern("HH:mm", locale, TimeZone.getDefault()).format(START));
+    }
+
+    private interface Tick {
+        String format(long time);
+    }
+
+    /**
+     * Mean nanoseconds per tick over a day of minute ticks.
+     */
+    private static long time(Tick tick) {
+        int length = 0;
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            length += formatDay(tick);
+        }
+        long start = System.nanoTime();
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            length += formatDay(tick);
+        }
+        long nanos = (System.nanoTime() - start) / ((long) MEASURED_RUNS * TICKS_PER_DAY);
+        return length > 0 ? nanos : -1;
+    }
+
+    private static int formatDay(Tick tick) {
+        int length = 0;
+        for (int i = 0; i < TICKS_PER_DAY; i++) {
+            length += tick.format(START + i * MINUTE).length();
+        }
+        return length;
+    }
+}
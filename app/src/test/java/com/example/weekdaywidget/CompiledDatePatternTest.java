@@ -0,0 +1,113 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Checks that compiled patterns format exactly like SimpleDateFormat, across the built-in
+ * formats, custom patterns, locales with inflected month names and DST transitions. Runs
+ * on API 23, where standalone months come from SimpleDateFormat, and on API 33, where they
+ * come from android.icu.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = {Build.VERSION_CODES.M, Build.VERSION_CODES.TIRAMISU})
+public class CompiledDatePatternTest {
+    // No pattern is a lone M field: desktop JDKs switch those to standalone names, Android does not
+    private static final String[] CUSTOM_PATTERNS = {
+        "d MMMM", "MMM d", "dd.MM.yyyy", "'Week of' MMM d", "EEE 'o''clock' h", "K:mm a", "k:mm:ss",
+        "''yy", "EEEE zzzz"
+    };
+    // Standalone months, checked against the formatter of the source each API level uses
+    private static final String[] STANDALONE_PATTERNS = {"LLLL", "LLL", "LLLL yyyy", "d LLLL", "L/d/yy"};
+    private static final Locale[] LOCALES = {
+        Locale.US, Locale.UK, Locale.FRANCE, Locale.GERMANY, new Locale("pl", "PL"),
+        new Locale("ru", "RU"), new Locale("cs", "CZ"), new Locale("uk", "UA"), Locale.JAPAN
+    };
+    private static final String[] ZONES = {"UTC", "America/New_York", "Europe/Warsaw", "Asia/Kolkata"};
+    // 2024-01-01T00:00Z, stepped unevenly so every month, weekday and hour is hit
+    private static final long START = 1_704_067_200_000L;
+    private static final long STEP = 37L * 60 * 60 * 1000 + 13L * 60 * 1000 + 7_000L;
+    private static final int STEPS = 400;
+
+    @Test
+    public void builtInFormatsMatchSimpleDateFormat() {
+        for (DateTimeFormat format : DateTimeFormat.values()) {
+            if (!format.getPattern().isEmpty()) {
+                assertMatches(format.getPattern());
+            }
+        }
+    }
+
+    @Test
+    public void customPatternsMatchSimpleDateFormat() {
+        for (String pattern : CUSTOM_PATTERNS) {
+            assertMatches(pattern);
+        }
+    }
+
+    @Test
+    public void standaloneMonthsMatchPlatformFormatter() {
+        TimeZone zone = TimeZone.getTimeZone("UTC");
+        for (String pattern : STANDALONE_PATTERNS) {
+            for (Locale locale : LOCALES) {
+                CompiledDatePattern compiled = new CompiledDatePattern(pattern, locale, zone);
+                for (int month = 0; month < 12; month++) {
+                    // The 15th of each month of 2024
+                    long time = START + (month * 31L + 14) * 24 * 60 * 60 * 1000;
+                    assertEquals(pattern + " in " + locale + " at " + time,
+                        formatStandalone(pattern, locale, time), compiled.format(time));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void standaloneMonthsUseNominativeNames() {
+        Locale polish = new Locale("pl", "PL");
+        TimeZone zone = TimeZone.getTimeZone("UTC");
+        assertEquals("styczeń", new CompiledDatePattern("LLLL", polish, zone).format(START));
+        assertEquals("1 stycznia", new CompiledDatePattern("d MMMM", polish, zone).format(START));
+    }
+
+    /**
+     * On API 24+ the compiled pattern reads ICU's standalone names, and Android's own
+     * SimpleDateFormat is ICU underneath; below that both go through SimpleDateFormat.
+     */
+    private static String formatStandalone(String pattern, Locale locale, long time) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            android.icu.text.SimpleDateFormat reference = new android.icu.text.SimpleDateFormat(pattern, locale);
+            reference.setTimeZone(android.icu.util.TimeZone.getTimeZone("UTC"));
+            return reference.format(new Date(time));
+        }
+        SimpleDateFormat reference = new SimpleDateFormat(pattern, locale);
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return reference.format(new Date(time));
+    }
+
+    private static void assertMatches(String pattern) {
+        for (Locale locale : LOCALES) {
+            for (String zoneId : ZONES) {
+                TimeZone zone = TimeZone.getTimeZone(zoneId);
+                CompiledDatePattern compiled = new CompiledDatePattern(pattern, locale, zone);
+                SimpleDateFormat reference = new SimpleDateFormat(pattern, locale);
+                reference.setTimeZone(zone);
+                for (int i = 0; i < STEPS; i++) {
+                    long time = START + i * STEP;
+                    assertEquals(pattern + " in " + locale + " " + zoneId + " at " + time,
+                        reference.format(new Date(time)), compiled.format(time));
+                }
+            }
+        }
+    }
+}
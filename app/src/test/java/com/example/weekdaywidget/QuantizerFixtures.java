@@ -0,0 +1,86 @@
+package com.example.weekdaywidget;
+
+import java.util.Random;
+
+/**
+ * Synthetic wallpaper-like pixel buffers shared by the quantizer test and benchmark. Each is
+ * {@link #SIZE} square, the size the extractor samples the wallpaper down to.
+ */
+final class QuantizerFixtures {
+    static final int SIZE = 100;
+    static final String[] NAMES = {
+        "gradient", "blocks", "noise", "skin tones", "dark with accent", "bright with accent",
+        "sunset stripes", "few colors", "black"
+    };
+
+    private QuantizerFixtures() {}
+
+    static int[] get(int index) {
+        Random random = new Random(index * 31L + 7);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                pixels[y * SIZE + x] = pixel(index, x, y, random);
+            }
+        }
+        return pixels;
+    }
+
+    private static int pixel(int index, int x, int y, Random random) {
+        float fx = x / (float) (SIZE - 1);
+        float fy = y / (float) (SIZE - 1);
+        switch (index) {
+            case 0:
+                // Blue to orange
+                return rgb(mix(0x1E, 0xF3, fx), mix(0x5A, 0x9C, fx), mix(0xC8, 0x12, fx));
+            case 1: {
+                // Four flat areas with a little noise
+                int[] colors = {0x2E7D32, 0xC62828, 0x1565C0, 0xF9A825};
+                int color = colors[(x < SIZE / 2 ? 0 : 1) + (y < SIZE / 2 ? 0 : 2)];
+                return jitter(color, random, 12);
+            }
+            case 2:
+                return 0xFF000000 | random.nextInt(0x1000000);
+            case 3:
+                // Mostly skin tones, which the default filter drops, around a teal shirt
+                return fy > 0.7f ? jitter(0x00897B, random, 10) : jitter(0xE0AC69, random, 24);
+            case 4:
+                // Near black with a vivid magenta band
+                return fy > 0.45f && fy < 0.55f ? jitter(0xD81B60, random, 16) : jitter(0x0A0A12, random, 6);
+            case 5:
+                // Near white with a pale green corner
+                return fx > 0.8f && fy > 0.8f ? jitter(0x81C784, random, 10) : jitter(0xF8F8F5, random, 4);
+            case 6: {
+                // Vertical sunset with horizontal cloud bands
+                int base = rgb(mix(0xFF, 0x4A, fy), mix(0x8A, 0x14, fy), mix(0x3D, 0x8C, fy));
+                return (y / 7) % 3 == 0 ? jitter(0x9E9E9E, random, 8) : jitter(base, random, 6);
+            }
+            case 7: {
+                // Few enough distinct colors that no box is ever split
+                int[] colors = {0xFF3F51B5, 0xFF009688, 0xFFFFC107, 0xFF795548, 0xFF607D8B};
+                return colors[(x / 20 + y / 25) % colors.length];
+            }
+            default:
+                return 0xFF000000;
+        }
+    }
+
+    private static int mix(int from, int to, float amount) {
+        return Math.round(from + (to - from) * amount);
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int jitter(int color, Random random, int amount) {
+        int r = clamp(((color >> 16) & 0xFF) + random.nextInt(2 * amount + 1) - amount);
+        int g = clamp(((color >> 8) & 0xFF) + random.nextInt(2 * amount + 1) - amount);
+        int b = clamp((color & 0xFF) + random.nextInt(2 * amount + 1) - amount);
+        return rgb(r, g, b);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
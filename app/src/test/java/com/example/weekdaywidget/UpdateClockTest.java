@@ -0,0 +1,109 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+/**
+ * Checks the next-fire calculation against fixed zones, including DST transitions.
+ */
+public class UpdateClockTest {
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    // 2024-03-31T00:00Z; Berlin moves from +1 to +2 at 01:00Z that day
+    private static final long MARCH_31 = 1_711_843_200_000L;
+    private static final long BERLIN_SPRING_FORWARD = MARCH_31 + HOUR;
+    // 2024-10-27T01:00Z, Berlin moves back from +2 to +1
+    private static final long BERLIN_FALL_BACK = 1_729_990_800_000L;
+
+    @Test
+    public void nextMinuteIsTheFollowingBoundary() {
+        UpdateClock clock = clockIn(TimeZone.getTimeZone("Europe/Berlin"));
+        long minute = MARCH_31 + 12 * HOUR + 34 * MINUTE;
+        assertEquals(minute + MINUTE, clock.nextMinuteBoundary(minute + 56 * SECOND + 789));
+        assertEquals(minute + MINUTE, clock.nextMinuteBoundary(minute + 1));
+        // Exactly on a boundary the next one is a full minute away
+        assertEquals(minute + MINUTE, clock.nextMinuteBoundary(minute));
+    }
+
+    @Test
+    public void nextMinuteFollowsTheLocalMinute() {
+        // Fixed +5:45 zone, the boundary is on the local minute
+        UpdateClock clock = clockIn(new SimpleTimeZone(5 * (int) HOUR + 45 * (int) MINUTE, "Test"));
+        long now = MARCH_31 + 10 * MINUTE + 30 * SECOND;
+        assertEquals(MARCH_31 + 11 * MINUTE, clock.nextMinuteBoundary(now));
+    }
+
+    @Test
+    public void nextMidnightIsLocalMidnight() {
+        UpdateClock clock = clockIn(TimeZone.getTimeZone("Europe/Berlin"));
+        // 2024-06-15T10:00Z is noon in Berlin; its midnight is 22:00Z
+        long june15 = 1_718_409_600_000L;
+        assertEquals(june15 + 22 * HOUR, clock.nextMidnight(june15 + 10 * HOUR));
+        // Exactly at midnight the next one is a day away
+        assertEquals(june15 + 46 * HOUR, clock.nextMidnight(june15 + 22 * HOUR));
+    }
+
+    @Test
+    public void nextMidnightAcrossDstIsTwentyThreeHoursAway() {
+        UpdateClock clock = clockIn(TimeZone.getTimeZone("Europe/Berlin"));
+        // Local midnight of March 31 is 23:00Z the day before, the next one 22:00Z
+        long midnight = MARCH_31 - HOUR;
+        assertEquals(MARCH_31 + 22 * HOUR, clock.nextMidnight(midnight));
+        assertEquals(23 * HOUR, clock.nextMidnight(midnight) - midnight);
+    }
+
+    @Test
+    public void offsetTransitionIsFoundBeforeMidnight() {
+        UpdateClock clock = clockIn(TimeZone.getTimeZone("Europe/Berlin"));
+        long now = MARCH_31 - HOUR;
+        assertEquals(BERLIN_SPRING_FORWARD, clock.nextOffsetTransition(now, clock.nextMidnight(now)));
+        assertEquals(BERLIN_SPRING_FORWARD, clock.nextOffsetTransition(BERLIN_SPRING_FORWARD - 1,
+            clock.nextMidnight(now)));
+
+        long autumn = BERLIN_FALL_BACK - 3 * HOUR;
+        assertEquals(BERLIN_FALL_BACK, clock.nextOffsetTransition(autumn, clock.nextMidnight(autumn)));
+    }
+
+    @Test
+    public void noTransitionAfterTheOneJustPassed() {
+        UpdateClock clock = clockIn(TimeZone.getTimeZone("Europe/Berlin"));
+        assertEquals(Long.MAX_VALUE, clock.nextOffsetTransition(BERLIN_SPRING_FORWARD,
+            clock.nextMidnight(BERLIN_SPRING_FORWARD)));
+        long summer = 1_718_409_600_000L;
+        assertEquals(Long.MAX_VALUE, clock.nextOffsetTransition(summer, clock.nextMidnight(summer)));
+    }
+
+    @Test
+    public void transitionOffTheMinuteIsStillAfterNow() {
+        // DST starts at 02:00:30 standard time, which is not on a minute boundary
+        TimeZone zone = new SimpleTimeZone(0, "Test", Calendar.MARCH, -1, Calendar.SUNDAY,
+            2 * (int) HOUR + 30 * (int) SECOND, Calendar.OCTOBER, -1, Calendar.SUNDAY, 2 * (int) HOUR);
+        UpdateClock clock = clockIn(zone);
+        long transition = MARCH_31 + 2 * HOUR + 30 * SECOND;
+        long now = transition - 10 * SECOND;
+        long next = clock.nextOffsetTransition(now, now + 12 * HOUR);
+        assertTrue("transition at " + next + " is not after " + now, next > now);
+        assertEquals(transition, next);
+    }
+
+    private static UpdateClock clockIn(TimeZone zone) {
+        return new UpdateClock(new UpdateClock.TimeSource() {
+            @Override
+            public long currentTimeMillis() {
+                return MARCH_31;
+            }
+
+            @Override
+            public TimeZone getTimeZone() {
+                return zone;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.weekdaywidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.os.Looper;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Checks which widgets the host's TextClock renders and which get their text as a bitmap.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class WeekDayWidgetSimpleTest {
+    // Any real font file; the test only needs the downloaded font to load
+    private static final File FONT_SOURCE = new File("src/main/res/font/dancing_script.ttf");
+
+    @Test
+    public void timeFormatInDefaultFontUsesHostClock() {
+        WidgetConfig config = new WidgetConfig(DateTimeFormat.TIME_24H, BoxDesignStyle.ROUNDED_CORNERS,
+            GradientStyle.PASTEL_PINK, FontStyle.DANCING_SCRIPT);
+        assertTrue(WeekDayWidgetSimple.usesHostClock(config));
+
+        View view = render(101, config);
+        assertTrue(view.findViewById(R.id.dayText) instanceof TextClock);
+    }
+
+    @Test
+    public void timeFormatInChosenFontGetsTextBitmap() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        installFont(context, FontStyle.ROBOTO);
+        WidgetConfig config = new WidgetConfig(DateTimeFormat.TIME_24H, BoxDesignStyle.ROUNDED_CORNERS,
+            GradientStyle.PASTEL_PINK, FontStyle.ROBOTO);
+        assertFalse(WeekDayWidgetSimple.usesHostClock(config));
+
+        View view = render(102, config);
+        ImageView image = view.findViewById(R.id.dayTextImage);
+        assertEquals(View.VISIBLE, image.getVisibility());
+        assertTrue(image.getDrawable() instanceof BitmapDrawable);
+        assertEquals(View.INVISIBLE, view.findViewById(R.id.dayText).getVisibility());
+    }
+
+    /**
+     * Renders one widget the way the executor would and returns the view the host shows.
+     */
+    private static View render(int appWidgetId, WidgetConfig config) {
+        Context context = RuntimeEnvironment.getApplication();
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        appWidgetManager.bindAppWidgetIdIfAllowed(appWidgetId, new ComponentName(context, WeekDayWidgetSimple.class));
+
+        int generation = RenderGenerations.next(appWidgetId);
+        assertTrue(WeekDayWidgetSimple.updateAppWidgets(context, appWidgetManager, config, 0,
+            WidgetBoundsStore.UNKNOWN_REGION, new int[] {appWidgetId}, new int[] {generation}));
+        return shadowOf(appWidgetManager).getViewFor(appWidgetId);
+    }
+
+    /**
+     * Puts a font file where the downloader would and waits for the registry to know it.
+     */
+    private static void installFont(Context context, FontStyle font) throws IOException, InterruptedException {
+        File file = TypefaceRegistry.getFontFile(context, font);
+        file.getParentFile().mkdirs();
+        Files.copy(FONT_SOURCE.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        boolean[] scanned = new boolean[1];
+        TypefaceRegistry.scan(context, () -> scanned[0] = true);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!scanned[0] && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            // The callback is posted to the main looper, which the test thread runs
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        assertTrue("font scan did not finish", scanned[0]);
+        // An earlier scan in this process may have run before the file existed
+        TypefaceRegistry.onFontDownloaded(font);
+    }
+}